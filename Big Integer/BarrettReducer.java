@@ -0,0 +1,178 @@
+/**
+ * Reduces HeftyIntegers modulo a fixed modulus m using Barrett's method.
+ * The reciprocal mu = floor(B^2k / m), for a k-limb modulus and B = 2^32,
+ * is computed once; after that each reduction of a value below B^2k takes
+ * two half products and at most two subtractions instead of a division.
+ * Unlike MontgomeryContext this works for even moduli too.
+ *
+ * The half products are schoolbook, so past BARRETT_LIMIT limbs they cost
+ * more than a Burnikel-Ziegler division and the reducer just calls mod.
+ */
+public class BarrettReducer {
+
+	//modulus size in limbs above which reduce divides instead; calibrated
+	// with ReductionBenchmark
+	static int BARRETT_LIMIT = 128;
+
+	private final HeftyInteger modulus;
+
+	//number of limbs in the modulus
+	private final int k;
+
+	//floor(B^2k / m), or null if the modulus is past BARRETT_LIMIT
+	private final HeftyInteger mu;
+
+	/**
+	 * Precompute the reciprocal of a modulus
+	 * @param modulus the modulus, must be positive
+	 */
+	public BarrettReducer(HeftyInteger modulus) {
+		if (modulus.signum <= 0) {
+			throw new ArithmeticException("Modulus not positive");
+		}
+		this.modulus = modulus;
+		k = modulus.mag.length;
+
+		if (k > BARRETT_LIMIT) {
+			mu = null;
+			return;
+		}
+		int[] b2k = new int[2 * k + 1];
+		b2k[2 * k] = 1;
+		mu = new HeftyInteger(1, b2k).divide(modulus);
+	}
+
+	/**
+	 * Return the modulus this reducer reduces by
+	 * @return the modulus
+	 */
+	public HeftyInteger getModulus() {
+		return modulus;
+	}
+
+	/**
+	 * Reduce x modulo the modulus. Values of up to twice the modulus length
+	 * take the Barrett path; anything longer, or any value for a modulus
+	 * past BARRETT_LIMIT, falls back to a division.
+	 * @return x mod m, in the range [0, m)
+	 */
+	public HeftyInteger reduce(HeftyInteger x) {
+		if (mu == null || x.mag.length > 2 * k) {
+			return x.mod(modulus);
+		}
+
+		HeftyInteger r = reduceMagnitude(x);
+		if (x.signum < 0 && r.signum != 0) {
+			r = modulus.subtract(r);
+		}
+		return r;
+	}
+
+	/**
+	 * Compute a * b mod m
+	 * @return the product, in the range [0, m)
+	 */
+	public HeftyInteger multiply(HeftyInteger a, HeftyInteger b) {
+		return reduce(reduce(a).multiply(reduce(b)));
+	}
+
+	/**
+	 * Barrett reduction of |x| for |x| < B^2k
+	 *   q = floor(floor(|x| / B^(k-1)) * mu / B^(k+1))
+	 * underestimates |x| / m by at most 2, so |x| - q*m needs at most two
+	 * corrections. Only the limbs of the two products that are actually
+	 * used are computed.
+	 */
+	private HeftyInteger reduceMagnitude(HeftyInteger x) {
+		HeftyInteger abs = (x.signum < 0) ? x.negate() : x;
+		if (abs.mag.length < k) {
+			return new HeftyInteger(1, abs.mag);
+		}
+		int[] q = quotientEstimate(abs.mag);
+		int[] r = lowRemainder(abs.mag, q);
+		while (compareToModulus(r) >= 0) {
+			subtractModulus(r);
+		}
+		return new HeftyInteger(1, r);
+	}
+
+	/**
+	 * Estimate floor(x / m) from the top limbs of x. Partial products of
+	 * q1 * mu that land below limb k-1 are skipped; together they are less
+	 * than B^(k+1), so the estimate loses at most one more.
+	 */
+	private int[] quotientEstimate(int[] x) {
+		int[] u = mu.mag;
+		int q1len = x.length - (k - 1);
+		int[] prod = new int[q1len + u.length];
+		for (int i = 0; i < q1len; i++) {
+			long xi = x[k - 1 + i] & HeftyInteger.LONG_MASK;
+			long carry = 0;
+			for (int j = Math.max(0, k - 1 - i); j < u.length; j++) {
+				carry += xi * (u[j] & HeftyInteger.LONG_MASK) + (prod[i + j] & HeftyInteger.LONG_MASK);
+				prod[i + j] = (int) carry;
+				carry >>>= 32;
+			}
+			prod[i + u.length] = (int) carry;
+		}
+
+		int[] q = new int[prod.length - (k + 1)];
+		System.arraycopy(prod, k + 1, q, 0, q.length);
+		return q;
+	}
+
+	/**
+	 * Compute (x - q*m) mod B^(k+1); the true difference is below 3m, so
+	 * only the low k+1 limbs of q*m are needed
+	 */
+	private int[] lowRemainder(int[] x, int[] q) {
+		int[] m = modulus.mag;
+		int[] qm = new int[k + 1];
+		for (int i = 0; i < q.length && i <= k; i++) {
+			long qi = q[i] & HeftyInteger.LONG_MASK;
+			long carry = 0;
+			for (int j = 0; j < m.length && i + j <= k; j++) {
+				carry += qi * (m[j] & HeftyInteger.LONG_MASK) + (qm[i + j] & HeftyInteger.LONG_MASK);
+				qm[i + j] = (int) carry;
+				carry >>>= 32;
+			}
+			if (i + m.length <= k) {
+				qm[i + m.length] = (int) carry;
+			}
+		}
+
+		int[] r = new int[k + 1];
+		long borrow = 0;
+		for (int i = 0; i <= k; i++) {
+			long xi = (i < x.length) ? (x[i] & HeftyInteger.LONG_MASK) : 0;
+			borrow += xi - (qm[i] & HeftyInteger.LONG_MASK);
+			r[i] = (int) borrow;
+			borrow >>= 32;
+		}
+		return r;
+	}
+
+	/**
+	 * Compare a k+1 limb value with the modulus
+	 */
+	private int compareToModulus(int[] r) {
+		if (r[k] != 0) {
+			return 1;
+		}
+		return HeftyInteger.compareMag(r, k, modulus.mag, k);
+	}
+
+	/**
+	 * Subtract the modulus from a k+1 limb value in place
+	 */
+	private void subtractModulus(int[] r) {
+		int[] m = modulus.mag;
+		long borrow = 0;
+		for (int i = 0; i <= k; i++) {
+			long mi = (i < k) ? (m[i] & HeftyInteger.LONG_MASK) : 0;
+			borrow += (r[i] & HeftyInteger.LONG_MASK) - mi;
+			r[i] = (int) borrow;
+			borrow >>= 32;
+		}
+	}
+}
@@ -1,27 +1,217 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
 
-public class HeftyInteger {
+/**
+ * An arbitrary precision signed integer kept in sign-magnitude form.
+ *
+ * Every HeftyInteger is canonical: mag has no leading zero limbs, zero is
+ * the empty array with signum 0, and getVal() produces the shortest two's
+ * complement encoding. All results pass through the package-private
+ * constructor, which enforces this, so sizes follow the actual magnitude
+ * no matter how long a computation runs.
+ */
+public class HeftyInteger implements Comparable<HeftyInteger> {
 
-	private final byte[] ONE = {(byte) 1};
-	private byte[] NEGATIVE_ONE = {(byte)-1};
-	private byte[] ZERO = {(byte)0};
+	//mask used to read an int limb as an unsigned value; package-private,
+	// like the limb helpers below, for the other classes in this directory
+	static final long LONG_MASK = 0xFFFFFFFFL;
 
-	private byte[] val;
+	//the values -MAX_CACHED to MAX_CACHED, built once and shared by valueOf
+	// and by internal constants, so small constants cost no allocation;
+	// extend mutates, so no other public method ever returns one of them
+	private static final int MAX_CACHED = 16;
+	private static final HeftyInteger[] SMALL_VALUES = new HeftyInteger[2 * MAX_CACHED + 1];
+	static {
+		for (int i = 1; i <= MAX_CACHED; i++) {
+			SMALL_VALUES[MAX_CACHED + i] = new HeftyInteger(1, new int[] {i});
+			SMALL_VALUES[MAX_CACHED - i] = new HeftyInteger(-1, new int[] {i});
+		}
+		SMALL_VALUES[MAX_CACHED] = new HeftyInteger(0, new int[0]);
+	}
+	static final HeftyInteger ZERO = SMALL_VALUES[MAX_CACHED];
+	static final HeftyInteger ONE = SMALL_VALUES[MAX_CACHED + 1];
+
+	//operand size in limbs at which multiply switches from the grade school
+	// kernel to Karatsuba; package-private so drivers can tune it
+	static int KARATSUBA_THRESHOLD = 48;
+
+	//operand size in limbs at which multiply switches from Karatsuba to
+	// Toom-Cook 3-way; calibrated with MultiplyBenchmark
+	static int TOOM3_THRESHOLD = 240;
+
+	//operand size in limbs at which multiply switches from Toom-Cook 3-way
+	// to the number theoretic transform; calibrated with MultiplyBenchmark
+	static int NTT_THRESHOLD = 20000;
+
+	//operand size in limbs from which the sub-products of a parallel
+	// multiply are forked as separate tasks
+	static int PARALLEL_THRESHOLD = 1024;
+
+	//divisor size in limbs, and amount by which the dividend must be longer,
+	// at which division switches from Algorithm D to Burnikel-Ziegler
+	static int BURNIKEL_ZIEGLER_THRESHOLD = 80;
+	static int BURNIKEL_ZIEGLER_OFFSET = 40;
+
+	//smaller operand size in limbs from which XGCD runs the recursive
+	// half-GCD before finishing with Lehmer, and the size in bits below which
+	// the half-GCD recursion bottoms out
+	static int HGCD_THRESHOLD = 1000;
+	static int HGCD_BASE_BITS = 4096;
+
+	//magnitude size in limbs (or digit chunks, each about one limb) at or
+	// below which parse and toString convert a chunk at a time instead of
+	// splitting on a cached power of the radix
+	static int RADIX_CONVERSION_THRESHOLD = 20;
+
+	//NTT primes of the form c*2^k+1 with a primitive root of each; the
+	// transform length is limited to 2^NTT_MAX_LOG by the smaller power of two
+	private static final long NTT_P1 = 2013265921L; //15*2^27+1
+	private static final long NTT_G1 = 31;
+	private static final long NTT_P2 = 469762049L; //7*2^26+1
+	private static final long NTT_G2 = 3;
+	private static final int NTT_MAX_LOG = 26;
+
+	//smallest operand the splitting algorithms will accept, whatever the
+	// thresholds are set to; below this the halves plus carry are no smaller
+	// than the operands and the recursion would never bottom out
+	private static final int MIN_SPLIT_LIMBS = 4;
+
+	//accelerated inner loops if the optional VectorLimbKernels class loads,
+	// otherwise null; used by the grade school multiply once the shorter
+	// operand has at least VECTOR_THRESHOLD limbs
+	private static final LimbKernels VECTOR_KERNELS = loadVectorKernels();
+	static int VECTOR_THRESHOLD = 16;
+
+	//for each radix, the most digits that always fit in a positive int and
+	// radix raised to that many digits
+	private static final int[] DIGITS_PER_CHUNK = new int[Character.MAX_RADIX + 1];
+	private static final int[] CHUNK_RADIX = new int[Character.MAX_RADIX + 1];
+	static {
+		for (int radix = Character.MIN_RADIX; radix <= Character.MAX_RADIX; radix++) {
+			long p = radix;
+			int k = 1;
+			while (p * radix <= Integer.MAX_VALUE) {
+				p *= radix;
+				k++;
+			}
+			DIGITS_PER_CHUNK[radix] = k;
+			CHUNK_RADIX[radix] = (int) p;
+		}
+	}
+
+	//primes below 2^15, found with a sieve of Eratosthenes; isProbablePrime
+	// trial divides by the first TRIAL_DIVISION_PRIMES of them and the prime
+	// generators sieve their candidates with all of them
+	private static final int[] SMALL_PRIMES = sieveSmallPrimes(1 << 15);
+	private static final int TRIAL_DIVISION_PRIMES = 168; //the primes below 1000
+
+	//certainty used by nextProbablePrime and randomPrime, as in BigInteger
+	private static final int DEFAULT_PRIME_CERTAINTY = 100;
+
+	//radixPowers[radix][i] caches CHUNK_RADIX[radix]^(2^i), grown on demand
+	private static final HeftyInteger[][] radixPowers = new HeftyInteger[Character.MAX_RADIX + 1][];
+
+	//-1, 0 or 1 depending on the sign of this HeftyInteger
+	//(package-private, like mag, for the helper classes in this directory)
+	int signum;
+
+	//magnitude stored as little-endian 32-bit limbs (mag[0] is least
+	// significant) with no leading zero limbs; zero is the empty array.
+	// Limb arrays are shared between instances and never modified in place.
+	int[] mag;
 
 	/**
 	 * Construct the HeftyInteger from a given byte array
 	 * @param b the byte array that this HeftyInteger should represent
 	 */
 	public HeftyInteger(byte[] b) {
-		val = b;
+		setFromBytes(b);
+	}
+
+	/**
+	 * Return a HeftyInteger equal to v. Values from -16 to 16 come from a
+	 * shared cache instead of being allocated.
+	 * @param v the value
+	 * @return a HeftyInteger equal to v
+	 */
+	public static HeftyInteger valueOf(long v) {
+		if (v >= -MAX_CACHED && v <= MAX_CACHED) {
+			return SMALL_VALUES[MAX_CACHED + (int) v];
+		}
+
+		//-v is still the right magnitude for Long.MIN_VALUE when read unsigned
+		long abs = (v < 0) ? -v : v;
+		int[] m = ((abs >>> 32) == 0) ? new int[] {(int) abs} : new int[] {(int) abs, (int) (abs >>> 32)};
+		return new HeftyInteger((v < 0) ? -1 : 1, m);
+	}
+
+	/**
+	 * Construct a HeftyInteger directly from a sign and a limb magnitude
+	 * @param signum -1, 0 or 1
+	 * @param mag little-endian limbs, may contain leading zero limbs
+	 */
+	HeftyInteger(int signum, int[] mag) {
+		this.mag = trim(mag);
+		this.signum = (this.mag.length == 0) ? 0 : signum;
+	}
+
+	/**
+	 * Convert a big-endian two's complement byte array into sign and limbs
+	 * @param b the byte array to convert
+	 */
+	private void setFromBytes(byte[] b) {
+		if (b.length == 0) {
+			signum = 0;
+			mag = new int[0];
+			return;
+		}
+
+		boolean negative = b[0] < 0;
+		int[] m = new int[(b.length + 3) >>> 2];
+
+		//pack bytes four at a time, least significant byte first
+		for (int i = 0; i < b.length; i++) {
+			m[i >>> 2] |= (b[b.length - 1 - i] & 0xFF) << ((i & 3) << 3);
+		}
+
+		if (negative) {
+			//sign extend the top limb, then take the two's complement to
+			// recover the magnitude
+			for (int i = b.length; i < (m.length << 2); i++) {
+				m[i >>> 2] |= 0xFF << ((i & 3) << 3);
+			}
+			int carry = 1;
+			for (int i = 0; i < m.length; i++) {
+				long sum = ((long) ~m[i] & LONG_MASK) + carry;
+				m[i] = (int) sum;
+				carry = (int) (sum >>> 32);
+			}
+		}
+
+		mag = trim(m);
+		signum = (mag.length == 0) ? 0 : (negative ? -1 : 1);
 	}
 
 	/**
 	 * Return this HeftyInteger's val
-	 * @return val
+	 * @return val as a big-endian two's complement byte array
 	 */
 	public byte[] getVal() {
-		return val;
+		int len = length();
+		byte[] res = new byte[len];
+		int nz = firstNonzeroLimb();
+
+		for (int i = 0; i < len; i++) {
+			int limb = twosComplementLimb(i >>> 2, nz);
+			res[len - 1 - i] = (byte) (limb >>> ((i & 3) << 3));
+		}
+		return res;
 	}
 
 	/**
@@ -29,20 +219,30 @@ public class HeftyInteger {
 	 * @return length of the val byte array
 	 */
 	public int length() {
-		return val.length;
+		return (bitLength() >>> 3) + 1;
 	}
 
 	/**
-	 * Add a new byte as the most significant in this
+	 * Add a new byte as the most significant in this. A plain sign
+	 * extension byte leaves the value, and so the canonical form, unchanged.
+	 * This is the only operation that changes a HeftyInteger in place, so it
+	 * is refused on the shared small values handed out by valueOf, and it
+	 * must not be used on a HashMap key or TreeMap key, which the map could
+	 * then no longer find.
 	 * @param extension the byte to place as most significant
 	 */
 	public void extend(byte extension) {
-		byte[] newv = new byte[val.length + 1];
-		newv[0] = extension;
-		for (int i = 0; i < val.length; i++) {
-			newv[i + 1] = val[i];
+		if (extension == ((signum < 0) ? (byte) -1 : 0)) {
+			return;
+		}
+		if (isCached()) {
+			throw new UnsupportedOperationException("Cannot extend a shared small HeftyInteger");
 		}
-		val = newv;
+		byte[] v = getVal();
+		byte[] newv = new byte[v.length + 1];
+		newv[0] = extension;
+		System.arraycopy(v, 0, newv, 1, v.length);
+		setFromBytes(newv);
 	}
 
 	/**
@@ -51,120 +251,350 @@ public class HeftyInteger {
 	 * @return true if this is negative, false if positive
 	 */
 	public boolean isNegative() {
-		return (val[0] < 0);
+		return (signum < 0);
 	}
 
 	/**
-	 * Computes the sum of this and other
-	 * @param other the other HeftyInteger to sum with this
+	 * Return the sign of this
+	 * @return -1, 0 or 1 as this is negative, zero or positive
 	 */
-	public HeftyInteger add(HeftyInteger other) {
-		byte[] a, b;
-		// If operands are of different sizes, put larger first ...
-		if (val.length < other.length()) {
-			a = other.getVal();
-			b = val;
+	public int signum() {
+		return signum;
+	}
+
+	/**
+	 * Convert this to a long, failing if it does not fit
+	 * @return this as a long
+	 */
+	public long longValueExact() {
+		if (bitLength() > 63) {
+			throw new ArithmeticException("HeftyInteger out of long range");
 		}
-		else {
-			a = val;
-			b = other.getVal();
+		long v = 0;
+		for (int i = mag.length - 1; i >= 0; i--) {
+			v = (v << 32) | (mag[i] & LONG_MASK);
 		}
+		return (signum < 0) ? -v : v;
+	}
 
-		// ... and normalize size for convenience
-		if (b.length < a.length) {
-			int diff = a.length - b.length;
+	/**
+	 * Compare this with other by value. Signs are compared first, then limb
+	 * counts, so only values of the same sign and length look at limbs, from
+	 * the top down.
+	 * @param other the HeftyInteger to compare with
+	 * @return -1, 0 or 1 as this is less than, equal to or greater than other
+	 */
+	@Override
+	public int compareTo(HeftyInteger other) {
+		if (signum != other.signum) {
+			return (signum < other.signum) ? -1 : 1;
+		}
+		int cmp = compareMag(mag, other.mag);
+		return (signum < 0) ? -cmp : cmp;
+	}
 
-			byte pad = (byte) 0;
-			if (b[0] < 0) {
-				pad = (byte) 0xFF;
-			}
+	/**
+	 * Check whether o is a HeftyInteger with the same value as this. The
+	 * value only changes through extend, so a HeftyInteger used as a map key
+	 * must not be extended.
+	 * @param o the object to compare with
+	 * @return true if o is numerically equal to this
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		}
+		if (!(o instanceof HeftyInteger)) {
+			return false;
+		}
+		HeftyInteger other = (HeftyInteger) o;
+		return signum == other.signum && Arrays.equals(mag, other.mag);
+	}
+
+	/**
+	 * Hash the value of this, consistent with equals since every
+	 * HeftyInteger is kept canonical; like equals, it changes if this is
+	 * extended
+	 * @return hash code of this
+	 */
+	@Override
+	public int hashCode() {
+		int h = 0;
+		for (int i = mag.length - 1; i >= 0; i--) {
+			h = 31 * h + mag[i];
+		}
+		return h * signum;
+	}
+
+	/**
+	 * Return the number of bits in the shortest two's complement form of
+	 * this, not counting the sign bit
+	 * @return the bit length, 0 for zero and -1
+	 */
+	public int bitLength() {
+		int bits = magBitLength(mag);
+
+		//a negative power of two needs one less bit in two's complement
+		// (e.g., -128 fits in a single byte)
+		if (signum < 0 && isPowerOfTwo(mag)) {
+			bits--;
+		}
+		return bits;
+	}
+
+	/**
+	 * Test a bit of the two's complement form of this, which is sign
+	 * extended indefinitely
+	 * @param n index of the bit, 0 is least significant
+	 * @return true if bit n is set
+	 */
+	public boolean testBit(int n) {
+		if (n < 0) {
+			throw new ArithmeticException("Negative bit address");
+		}
+		return (twosComplementLimb(n >>> 5, firstNonzeroLimb()) & (1 << (n & 31))) != 0;
+	}
+
+	/**
+	 * Find the index of the lowest set bit of this
+	 * @return number of trailing zero bits, or -1 for zero
+	 */
+	private int lowestSetBit() {
+		int i = firstNonzeroLimb();
+		if (i == mag.length) {
+			return -1;
+		}
+		return (i << 5) + Integer.numberOfTrailingZeros(mag[i]);
+	}
 
-			byte[] newb = new byte[a.length];
-			for (int i = 0; i < diff; i++) {
-				newb[i] = pad;
+	/**
+	 * Shift this left by n bits, or right if n is negative
+	 * @param n number of bits to shift by
+	 * @return this * 2^n, rounded toward negative infinity
+	 */
+	public HeftyInteger shiftLeft(int n) {
+		if (n < 0) {
+			if (n == Integer.MIN_VALUE) {
+				throw new ArithmeticException("Shift distance of Integer.MIN_VALUE not supported");
 			}
+			return shiftRight(-n);
+		}
+		if (n == 0 || signum == 0) {
+			return new HeftyInteger(signum, mag);
+		}
+		return new HeftyInteger(signum, shiftLeftMag(mag, n));
+	}
 
-			for (int i = 0; i < b.length; i++) {
-				newb[i + diff] = b[i];
+	/**
+	 * Arithmetic shift of this right by n bits, or left if n is negative.
+	 * Like the two's complement shift, negative values round toward
+	 * negative infinity.
+	 * @param n number of bits to shift by
+	 * @return floor(this / 2^n)
+	 */
+	public HeftyInteger shiftRight(int n) {
+		if (n < 0) {
+			if (n == Integer.MIN_VALUE) {
+				throw new ArithmeticException("Shift distance of Integer.MIN_VALUE not supported");
 			}
+			return shiftLeft(-n);
+		}
+		if (n == 0 || signum == 0) {
+			return new HeftyInteger(signum, mag);
+		}
+		int[] res = shiftRightMag(mag, n);
+		if (signum > 0) {
+			return new HeftyInteger(1, res);
+		}
 
-			b = newb;
+		//the magnitude rounds up if any bit shifted out was set
+		int limbs = n >>> 5;
+		boolean inexact = firstNonzeroLimb() < limbs
+				|| (limbs < mag.length && (mag[limbs] & ((1 << (n & 31)) - 1)) != 0);
+		if (inexact) {
+			int i = 0;
+			while (i < res.length && ++res[i] == 0) {
+				i++;
+			}
+			if (i == res.length) {
+				//every limb carried out, the result gains a limb
+				res = new int[res.length + 1];
+				res[res.length - 1] = 1;
+			}
 		}
+		return new HeftyInteger(-1, res);
+	}
 
-		// Actually compute the add
-		int carry = 0;
-		byte[] res = new byte[a.length];
-		for (int i = a.length - 1; i >= 0; i--) {
-			// Be sure to bitmask so that cast of negative bytes does not
-			//  introduce spurious 1 bits into result of cast
-			carry = ((int) a[i] & 0xFF) + ((int) b[i] & 0xFF) + carry;
+	/**
+	 * Compute the bitwise AND of the two's complement forms
+	 * @param other the HeftyInteger to AND with this
+	 * @return this & other
+	 */
+	public HeftyInteger and(HeftyInteger other) {
+		return bitwise(other, 0);
+	}
+
+	/**
+	 * Compute the bitwise OR of the two's complement forms
+	 * @param other the HeftyInteger to OR with this
+	 * @return this | other
+	 */
+	public HeftyInteger or(HeftyInteger other) {
+		return bitwise(other, 1);
+	}
 
-			// Assign to next byte
-			res[i] = (byte) (carry & 0xFF);
+	/**
+	 * Compute the bitwise XOR of the two's complement forms
+	 * @param other the HeftyInteger to XOR with this
+	 * @return this ^ other
+	 */
+	public HeftyInteger xor(HeftyInteger other) {
+		return bitwise(other, 2);
+	}
 
-			// Carry remainder over to next byte (always want to shift in 0s)
-			carry = carry >>> 8;
+	/**
+	 * Parse a string of digits in the given radix, with an optional leading
+	 * '-' or '+'. Long inputs are split in two on a cached power of the
+	 * radix and the halves joined with one multiply, so the cost follows
+	 * multiplication rather than growing quadratically.
+	 * @param s the digits to parse
+	 * @param radix the radix, from Character.MIN_RADIX to Character.MAX_RADIX
+	 * @return the HeftyInteger that s represents
+	 */
+	public static HeftyInteger parse(CharSequence s, int radix) {
+		if (radix < Character.MIN_RADIX || radix > Character.MAX_RADIX) {
+			throw new NumberFormatException("Radix out of range");
+		}
+		int start = 0;
+		int sign = 1;
+		if (s.length() > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+')) {
+			sign = (s.charAt(0) == '-') ? -1 : 1;
+			start = 1;
 		}
+		if (start == s.length()) {
+			throw new NumberFormatException("Zero length HeftyInteger");
+		}
+		return new HeftyInteger(sign, parseMag(s, start, s.length(), radix));
+	}
 
-		HeftyInteger res_li = new HeftyInteger(res);
+	/**
+	 * Return the digits of this in the given radix, with a leading '-' if
+	 * negative. Large values are split by dividing by a cached power of the
+	 * radix and each half converted recursively.
+	 * @param radix the radix, 10 is used if it is out of range
+	 * @return this as a string in the given radix
+	 */
+	public String toString(int radix) {
+		if (radix < Character.MIN_RADIX || radix > Character.MAX_RADIX) {
+			radix = 10;
+		}
+		if (signum == 0) {
+			return "0";
+		}
+		StringBuilder sb = new StringBuilder();
+		if (signum < 0) {
+			sb.append('-');
+		}
+		toStringMag(mag, radix, sb, 0);
+		return sb.toString();
+	}
 
-		// If both operands are positive, magnitude could increase as a result
-		//  of addition
-		if (!this.isNegative() && !other.isNegative()) {
-			// If we have either a leftover carry value or we used the last
-			//  bit in the most significant byte, we need to extend the result
-			if (res_li.isNegative()) {
-				res_li.extend((byte) carry);
-			}
+	/**
+	 * Return the decimal digits of this
+	 * @return this as a decimal string
+	 */
+	@Override
+	public String toString() {
+		return toString(10);
+	}
+
+	/**
+	 * Computes the sum of this and other
+	 * @param other the other HeftyInteger to sum with this
+	 */
+	public HeftyInteger add(HeftyInteger other) {
+		//extend replaces this in place, so a result is never one of the
+		// operands; it may still share their limbs, which are never modified
+		if (other.signum == 0) {
+			return new HeftyInteger(signum, mag);
 		}
-		// Magnitude could also increase if both operands are negative
-		else if (this.isNegative() && other.isNegative()) {
-			if (!res_li.isNegative()) {
-				res_li.extend((byte) 0xFF);
-			}
+		if (signum == 0) {
+			return new HeftyInteger(other.signum, other.mag);
+		}
+
+		//same sign means the magnitudes simply add
+		if (signum == other.signum) {
+			return new HeftyInteger(signum, addMag(mag, other.mag));
 		}
 
-		// Note that result will always be the same size as biggest input
-		//  (e.g., -127 + 128 will use 2 bytes to store the result value 1)
-		return res_li;
+		//otherwise subtract the smaller magnitude from the larger one and
+		// take the sign of the larger
+		int cmp = compareMag(mag, other.mag);
+		if (cmp == 0) {
+			return new HeftyInteger(0, new int[0]);
+		}
+		if (cmp > 0) {
+			return new HeftyInteger(signum, subtractMag(mag, other.mag));
+		}
+		return new HeftyInteger(other.signum, subtractMag(other.mag, mag));
 	}
 
 	/**
-	 * Negate val using two's complement representation
-	 * @return negation of this
+	 * Compute the sum of this and a long. Only the low limbs are touched;
+	 * the rest is copied unless a carry or borrow runs up through them.
+	 * @param v the long to add to this
+	 * @return this + v
 	 */
-	public HeftyInteger negate() {
-		byte[] neg = new byte[val.length];
-		int offset = 0;
-
-		// Check to ensure we can represent negation in same length
-		//  (e.g., -128 can be represented in 8 bits using two's
-		//  complement, +128 requires 9)
-		if (val[0] == (byte) 0x80) { // 0x80 is 10000000
-			boolean needs_ex = true;
-			for (int i = 1; i < val.length; i++) {
-				if (val[i] != (byte) 0) {
-					needs_ex = false;
-					break;
+	public HeftyInteger add(long v) {
+		if (v == 0) {
+			return new HeftyInteger(signum, mag);
+		}
+		if (signum == 0 || mag.length <= 2) {
+			//small enough that the general path is already short
+			return add(valueOf(v));
+		}
+
+		//|this| is above 2^64, so its sign wins whatever v is
+		long abs = (v < 0) ? -v : v;
+		int[] res = Arrays.copyOf(mag, mag.length);
+		if ((v < 0) == (signum < 0)) {
+			long carry = (res[0] & LONG_MASK) + (abs & LONG_MASK);
+			res[0] = (int) carry;
+			carry = (carry >>> 32) + (res[1] & LONG_MASK) + (abs >>> 32);
+			res[1] = (int) carry;
+			carry >>>= 32;
+			for (int i = 2; carry != 0; i++) {
+				if (i == res.length) {
+					res = Arrays.copyOf(res, res.length + 1);
 				}
-			}
-			// if first byte is 0x80 and all others are 0, must extend
-			if (needs_ex) {
-				neg = new byte[val.length + 1];
-				neg[0] = (byte) 0;
-				offset = 1;
+				carry += res[i] & LONG_MASK;
+				res[i] = (int) carry;
+				carry >>>= 32;
 			}
 		}
-
-		// flip all bits
-		for (int i  = 0; i < val.length; i++) {
-			neg[i + offset] = (byte) ~val[i];
+		else {
+			long borrow = (res[0] & LONG_MASK) - (abs & LONG_MASK);
+			res[0] = (int) borrow;
+			borrow = (borrow >> 32) + (res[1] & LONG_MASK) - (abs >>> 32);
+			res[1] = (int) borrow;
+			borrow >>= 32;
+			for (int i = 2; borrow != 0; i++) {
+				borrow += res[i] & LONG_MASK;
+				res[i] = (int) borrow;
+				borrow >>= 32;
+			}
 		}
+		return new HeftyInteger(signum, res);
+	}
 
-		HeftyInteger neg_li = new HeftyInteger(neg);
-
-		// add 1 to complete two's complement negation
-		return neg_li.add(new HeftyInteger(ONE));
+	/**
+	 * Negate this HeftyInteger
+	 * @return negation of this
+	 */
+	public HeftyInteger negate() {
+		//limb arrays are never modified in place, so they can be shared
+		return new HeftyInteger(-signum, mag);
 	}
 
 	/**
@@ -182,178 +612,2550 @@ public class HeftyInteger {
 	 * @return product of this and other
 	 */
 	public HeftyInteger multiply(HeftyInteger other) {
-		byte[] a,b;
-		
-		//put the larger value into a
-		if (val.length < other.length()) {
-			a = other.getVal();
-			b = val;
+		if (signum == 0 || other.signum == 0) {
+			return new HeftyInteger(0, new int[0]);
 		}
-		else {
-			a = val;
-			b = other.getVal();
-		}
-
-		//make both byte arrays the same size
-		if (b.length < a.length) {
-			int diff = a.length - b.length;
-
-			byte pad = (byte) 0;
-			if (b[0] < 0) {
-				pad = (byte) 0xFFFF;
-			}
-
-			byte[] newb = new byte[a.length];
-			for (int i = 0; i < diff; i++) {
-				newb[i] = pad;
-			}
-
-			for (int i = 0; i < b.length; i++) {
-				newb[i + diff] = b[i];
-			}
-
-			b = newb;
-		}
-	
-		int carry, aCurr, bCurr, z;
-		byte[] temp;
-		HeftyInteger product = new HeftyInteger(new byte[2*a.length]), A = new HeftyInteger(a), B = new HeftyInteger(b);
-		boolean flagA=false, flagB=false;
-		
-		//only work with positive numbers, then negate the result if necessary
-		if(A.isNegative()) {
-			flagA=true;
-			A = A.negate();
-		}
-		if(B.isNegative()) {
-			flagB=true;
-			B = B.negate();
-		}
-		
-		//retrieve positive values
-		a = A.getVal();
-		b = B.getVal();
-
-		//grade school-type algorithm
-		for (int i=0; i<a.length;i++) {
-            for (int j=0; j<b.length;j++){
-				temp = new byte[2*a.length]; //init array to hold partial product
-				
-				z=i+j+1; //properly shift the partial product
-				
-				aCurr = a[i]; //consider each array one byte at a time
-				bCurr = b[j];
-				
-				//only work with positive numbers
-				if(aCurr<0) {
-					aCurr+=256; 
-				}
-				
-				if(bCurr<0) { 
-					bCurr+=256;
-				}
-				
-				carry = (aCurr*bCurr); //compute mult
-				
-				temp[z--] = (byte) carry; //store the product
-				temp[z] = (byte) ((carry) >> 8); //and its overflow
-				
-				//add partial product to total
-				product = product.add(new HeftyInteger(temp)); 
-            }
+		return new HeftyInteger(signum * other.signum, multiplyMag(mag, other.mag, false));
+	}
+
+	/**
+	 * Compute the product of this and a long in one pass over the limbs
+	 * @param v the long to multiply this by
+	 * @return this * v
+	 */
+	public HeftyInteger multiply(long v) {
+		if (v == 0 || signum == 0) {
+			return new HeftyInteger(0, new int[0]);
 		}
-		//if exactly one input was negative, make output negative
-		if((flagA || flagB) && !(flagA && flagB)) product = product.negate();
+		long abs = (v < 0) ? -v : v;
+		int[] y = ((abs >>> 32) == 0) ? new int[] {(int) abs} : new int[] {(int) abs, (int) (abs >>> 32)};
+		int[] res = new int[mag.length + y.length];
+		schoolbookMultiply(mag, mag.length, y, y.length, res);
+		return new HeftyInteger((v < 0) ? -signum : signum, res);
+	}
 
-		return product;
+	/**
+	 * Compute the square of this, which only needs each cross product once
+	 * @return this * this
+	 */
+	public HeftyInteger square() {
+		if (signum == 0) {
+			return new HeftyInteger(0, mag);
+		}
+		return new HeftyInteger(1, squareMag(mag, false));
 	}
-	
+
 	/**
-	 * Run the extended Euclidean algorithm on this and other
-	 * @param other another HeftyInteger
+	 * Raise this to a non-negative power by left-to-right square and multiply
+	 * @param exponent the power to raise this to
+	 * @return this^exponent
+	 */
+	public HeftyInteger pow(int exponent) {
+		if (exponent < 0) {
+			throw new ArithmeticException("Negative exponent");
+		}
+
+		//factors of two come out as one shift at the end instead of being
+		// carried through every square
+		int zeros = lowestSetBit();
+		if (zeros > 0) {
+			long shift = (long) zeros * exponent;
+			if (shift > Integer.MAX_VALUE) {
+				throw new ArithmeticException("HeftyInteger would overflow supported range");
+			}
+			return shiftRight(zeros).pow(exponent).shiftLeft((int) shift);
+		}
+
+		HeftyInteger res = ONE;
+		for (int bit = Integer.highestOneBit(exponent); bit != 0; bit >>>= 1) {
+			res = res.square();
+			if ((exponent & bit) != 0) {
+				res = res.multiply(this);
+			}
+		}
+		return unshared(res);
+	}
+
+	/**
+	 * Compute n! from its prime factorization. The exponent of each odd
+	 * prime comes from Legendre's formula, and the primes are multiplied in
+	 * balanced product trees, grouped by the bits of their exponents, so
+	 * the large multiplies are between operands of similar size.
+	 * @param n a non-negative integer
+	 * @return n!
+	 */
+	public static HeftyInteger factorial(int n) {
+		if (n < 0) {
+			throw new ArithmeticException("Negative factorial argument");
+		}
+		int[] primes = sieveSmallPrimes(Math.max(n + 1, 3));
+		int[] exps = new int[primes.length];
+		for (int i = 0; i < primes.length; i++) {
+			//sum of floor(n / p^j) over j >= 1
+			for (long q = n / primes[i]; q > 0; q /= primes[i]) {
+				exps[i] += (int) q;
+			}
+		}
+		return primePowerProduct(primes, exps);
+	}
+
+	/**
+	 * Compute the binomial coefficient C(n, k) from its prime factorization,
+	 * with the exponent of each prime from Kummer's theorem (the number of
+	 * borrows when subtracting k from n in base p), multiplied together as
+	 * in factorial
+	 * @param n a non-negative integer
+	 * @param k how many to choose
+	 * @return n! / (k! (n - k)!), or 0 if k is outside [0, n]
+	 */
+	public static HeftyInteger binomial(int n, int k) {
+		if (n < 0) {
+			throw new ArithmeticException("Negative binomial argument");
+		}
+		if (k < 0 || k > n) {
+			return new HeftyInteger(0, new int[0]);
+		}
+		int[] primes = sieveSmallPrimes(Math.max(n + 1, 3));
+		int[] exps = new int[primes.length];
+		for (int i = 0; i < primes.length; i++) {
+			long p = primes[i];
+			for (long q = p; q <= n; q *= p) {
+				exps[i] += (int) (n / q - k / q - (n - k) / q);
+			}
+		}
+		return primePowerProduct(primes, exps);
+	}
+
+	/**
+	 * Compute the integer square root of this
+	 * @return floor(sqrt(this))
+	 */
+	public HeftyInteger sqrt() {
+		return sqrtAndRemainder()[0];
+	}
+
+	/**
+	 * Compute the integer square root of this and what is left over. The
+	 * root of the top half of the bits is found first, recursively, and one
+	 * Newton step then doubles its precision, so only the last step works
+	 * at full size.
 	 * @return an array structured as follows:
-	 *   0:  the GCD of this and other
-	 *   1:  a valid x value
-	 *   2:  a valid y value
-	 * such that this * x + other * y == GCD in index 0
+	 *   0:  s, the integer square root of this
+	 *   1:  the remainder this - s^2
 	 */
-	public HeftyInteger[] XGCD(HeftyInteger other) {
-		HeftyInteger larger, smaller;
-		
-		//put the larger value into the correct HeftyInt
-		if (val.length < other.length()) {
-			larger = new HeftyInteger(other.getVal());
-			smaller = new HeftyInteger(val);
+	public HeftyInteger[] sqrtAndRemainder() {
+		if (signum < 0) {
+			throw new ArithmeticException("Square root of negative HeftyInteger");
 		}
-		else {
-			larger = new HeftyInteger(val);
-			smaller = new HeftyInteger(other.getVal());
-		}
-		
-		//only work with positive numbers, then negate the result if necessary
-		boolean flagA=false, flagB=false;
-		if(larger.isNegative()) {larger = larger.negate(); flagA=true;}
-		if(smaller.isNegative()) {smaller = smaller.negate(); flagB=true;}
-		
-		HeftyInteger temp = larger, temp2, div = new HeftyInteger(ZERO);
-		
-		//holds the result of a/b at each step in the process
-		HeftyInteger[] divisions = new HeftyInteger[larger.length()*8];
-		
-		byte[] mod;
-		int y=0;
-		
-		//while smaller is non-negative
-		while(!(smaller.add(new HeftyInteger(NEGATIVE_ONE)).isNegative())) {
-			
-			//modulus is the result of repeated subtraction
-			while(!(larger.add(smaller.negate()).isNegative())) {
-				larger = larger.subtract(smaller);
-				div = div.add(new HeftyInteger(ONE)); 
-			}
-			
-			//larger now holds value of a%b
-			//div now holds value of a/b
-			divisions[y] = div;
-			y++; //maintains proper index 
-			
-			div = new HeftyInteger(ZERO);
-			
-			//swap values for next step in algorithm
-			temp = larger; 
-			larger = smaller;
-			smaller = temp;
-		}
-		
-		HeftyInteger s = new HeftyInteger(ONE), t = new HeftyInteger(ZERO);
-		byte[] rep = t.getVal();
-		
-		//work back up through to calculate s and t
-		for(int i=y-1; i>=0; i--) {
-			
-			//perform the euclidean ops
-			temp = t;
-			temp2 = divisions[i];
-			t = s.subtract(t.multiply(temp2));
-			s = temp;
-			
-			//prevent the multiplied array from growing in size unnecessarily
-			//if there's a leading zero, remove it
-			int g = t.length() - 1;
-			while(t.getVal()[0]==0 && t.getVal().length>larger.length() && g>0) {
-				rep = new byte[g];
-				
-				//reduce length by one
-				for(int p=1; p<t.getVal().length; p++) {
-					rep[p-1] = 
-					t.getVal()[p];
-				}
-				
-				t = new HeftyInteger(rep); //store result
-				g--;
+		HeftyInteger[] sr = sqrtRem(this);
+		return new HeftyInteger[] {unshared(sr[0]), unshared(sr[1])};
+	}
+
+	/**
+	 * Compute the integer nth root of this, truncated toward zero. Like
+	 * sqrt, the root of the top bits is found first and Newton's method
+	 * then works down from just above the true root.
+	 * @param n the degree of the root, positive; must be odd if this is
+	 * negative
+	 * @return the integer nth root of this
+	 */
+	public HeftyInteger root(int n) {
+		if (n <= 0) {
+			throw new ArithmeticException("Non-positive root degree");
+		}
+		if (signum < 0) {
+			if ((n & 1) == 0) {
+				throw new ArithmeticException("Even root of negative HeftyInteger");
+			}
+			return negate().root(n).negate();
+		}
+		if (n == 1 || signum == 0) {
+			return new HeftyInteger(signum, mag);
+		}
+		if (n == 2) {
+			return sqrt();
+		}
+		return rootOf(this, n);
+	}
+
+	/**
+	 * Compute this^exponent mod m. Odd moduli use Montgomery multiplication
+	 * with a sliding window; even moduli fall back to square and multiply
+	 * with a Barrett reduction per step.
+	 * @param exponent the exponent; a negative one requires this to be
+	 * invertible modulo m
+	 * @param m the modulus, must be positive
+	 * @return this^exponent mod m, in the range [0, m)
+	 */
+	public HeftyInteger modPow(HeftyInteger exponent, HeftyInteger m) {
+		if (m.signum <= 0) {
+			throw new ArithmeticException("Modulus not positive");
+		}
+		if (exponent.signum < 0) {
+			return modInverse(m).modPow(exponent.negate(), m);
+		}
+		if ((m.mag[0] & 1) != 0) {
+			return new MontgomeryContext(m).modPow(this, exponent);
+		}
+
+		BarrettReducer reducer = new BarrettReducer(m);
+		HeftyInteger base = reducer.reduce(this);
+		HeftyInteger res = reducer.reduce(ONE);
+		for (int i = magBitLength(exponent.mag) - 1; i >= 0; i--) {
+			res = reducer.reduce(res.square());
+			if ((exponent.mag[i >>> 5] & (1 << (i & 31))) != 0) {
+				res = reducer.reduce(res.multiply(base));
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Compute the inverse of this modulo m using XGCD
+	 * @param m the modulus, must be positive
+	 * @return x in the range [0, m) with this * x == 1 mod m
+	 */
+	public HeftyInteger modInverse(HeftyInteger m) {
+		if (m.signum <= 0) {
+			throw new ArithmeticException("Modulus not positive");
+		}
+		if (m.mag.length == 1 && m.mag[0] == 1) {
+			return new HeftyInteger(0, new int[0]);
+		}
+		HeftyInteger[] gxy = mod(m).XGCD(m);
+		if (gxy[0].mag.length != 1 || gxy[0].mag[0] != 1) {
+			throw new ArithmeticException("HeftyInteger not invertible");
+		}
+		return gxy[1].mod(m);
+	}
+
+	/**
+	 * Invert every value modulo m with a single XGCD (Montgomery's
+	 * simultaneous inversion): invert the product of all the values, then
+	 * peel the individual inverses off using the prefix products, at a cost
+	 * of three modular multiplications per value
+	 * @param values the values to invert, each invertible modulo m
+	 * @param m the modulus, must be positive
+	 * @return the inverses, in the same order, each in the range [0, m)
+	 */
+	public static HeftyInteger[] batchModInverse(HeftyInteger[] values, HeftyInteger m) {
+		BarrettReducer reducer = new BarrettReducer(m);
+		int n = values.length;
+		HeftyInteger[] res = new HeftyInteger[n];
+		if (n == 0) {
+			return res;
+		}
+
+		//res[i] temporarily holds values[0] * ... * values[i] mod m
+		HeftyInteger[] reduced = new HeftyInteger[n];
+		for (int i = 0; i < n; i++) {
+			reduced[i] = reducer.reduce(values[i]);
+			res[i] = (i == 0) ? reduced[0] : reducer.reduce(res[i - 1].multiply(reduced[i]));
+		}
+
+		//a zero product means at least one value shares a factor with m
+		HeftyInteger inv = res[n - 1].modInverse(m);
+		for (int i = n - 1; i > 0; i--) {
+			res[i] = reducer.reduce(inv.multiply(res[i - 1]));
+			inv = reducer.reduce(inv.multiply(reduced[i]));
+		}
+		res[0] = inv;
+		return res;
+	}
+
+	/**
+	 * Test whether the absolute value of this is probably prime. Small
+	 * factors are ruled out by trial division first; what survives gets
+	 * Miller-Rabin rounds in Montgomery form with random bases and, from 100
+	 * bits up, a Lucas test. The number of rounds shrinks with size as in
+	 * BigInteger, since large composites rarely pass even one round.
+	 * @param certainty a prime is never rejected, a composite passes with
+	 * probability at most 2^-certainty
+	 * @return false if this is certainly composite, true if it is probably
+	 * prime or certainty is not positive
+	 */
+	public boolean isProbablePrime(int certainty) {
+		if (certainty <= 0) {
+			return true;
+		}
+		if (mag.length == 0) {
+			return false;
+		}
+		int top = SMALL_PRIMES[SMALL_PRIMES.length - 1];
+		if (mag.length == 1 && (mag[0] & LONG_MASK) <= top) {
+			return Arrays.binarySearch(SMALL_PRIMES, mag[0]) >= 0;
+		}
+		if ((mag[0] & 1) == 0) {
+			return false;
+		}
+		int[] rems = smallPrimeRemainders(mag, TRIAL_DIVISION_PRIMES);
+		for (int r : rems) {
+			if (r == 0) {
+				return false;
+			}
+		}
+		return passesPrimalityTests(new HeftyInteger(1, mag), certainty, ThreadLocalRandom.current());
+	}
+
+	/**
+	 * Find the first probable prime greater than this. Candidates are taken
+	 * a window at a time and sieved in bulk by the small primes, so only the
+	 * survivors need Miller-Rabin.
+	 * @return the smallest probable prime greater than this
+	 */
+	public HeftyInteger nextProbablePrime() {
+		if (signum < 0) {
+			throw new ArithmeticException("Start of prime search is negative");
+		}
+		int top = SMALL_PRIMES[SMALL_PRIMES.length - 1];
+		if (mag.length == 0 || (mag.length == 1 && (mag[0] & LONG_MASK) < top)) {
+			int i = (mag.length == 0) ? -1 : Arrays.binarySearch(SMALL_PRIMES, mag[0]);
+			i = (i >= 0) ? i + 1 : -i - 1;
+			return new HeftyInteger(1, new int[] {SMALL_PRIMES[i]});
+		}
+
+		//first odd number above this; every candidate is now bigger than
+		// all the sieving primes
+		HeftyInteger start = add(1);
+		if ((start.mag[0] & 1) == 0) {
+			start = start.add(1);
+		}
+		int window = Math.max(64, bitLength() / 20 * 64);
+		Random rnd = ThreadLocalRandom.current();
+		while (true) {
+			boolean[] composite = sieveWindow(start.mag, window);
+			for (int i = 0; i < window; i++) {
+				if (!composite[i]) {
+					HeftyInteger candidate = start.add(2L * i);
+					if (passesPrimalityTests(candidate, DEFAULT_PRIME_CERTAINTY, rnd)) {
+						return candidate;
+					}
+				}
+			}
+			start = start.add(2L * window);
+		}
+	}
+
+	/**
+	 * Generate a random probable prime of exactly bitLength bits by
+	 * searching upward from a random odd starting point
+	 * @param bitLength the bit length of the prime, at least 2
+	 * @param rnd source of random bits for the starting point
+	 * @return a probable prime with the given bit length
+	 */
+	public static HeftyInteger randomPrime(int bitLength, Random rnd) {
+		if (bitLength < 2) {
+			throw new ArithmeticException("Prime bit length below 2");
+		}
+		while (true) {
+			//top bit set so the prime has the full length
+			int[] m = randomBits(bitLength, rnd);
+			m[(bitLength - 1) >>> 5] |= 1 << ((bitLength - 1) & 31);
+			HeftyInteger p = new HeftyInteger(1, m).add(-1).nextProbablePrime();
+			if (p.bitLength() == bitLength) {
+				return p;
+			}
+		}
+	}
+
+	/**
+	 * Build a balanced product tree over values, so every multiply is
+	 * between operands of similar size and the fast tiers do the work
+	 * @param values the leaves, at least one
+	 * @return the levels of the tree: level 0 is a copy of values, each
+	 * node of level i + 1 is the product of nodes 2j and 2j + 1 of level i
+	 * (an unpaired last node is carried up as is), and the last level holds
+	 * only the product of all the values
+	 */
+	public static HeftyInteger[][] productTree(HeftyInteger[] values) {
+		return productTree(values, null);
+	}
+
+	/**
+	 * Build a product tree as productTree(values) does, running the
+	 * products of each level, and their own sub-products, as tasks in the
+	 * given pool
+	 * @param values the leaves, at least one
+	 * @param pool the pool to multiply in, or null to work sequentially
+	 * @return the levels of the tree, leaves first
+	 */
+	public static HeftyInteger[][] productTree(HeftyInteger[] values, ForkJoinPool pool) {
+		if (values.length == 0) {
+			throw new IllegalArgumentException("No values to multiply");
+		}
+		List<HeftyInteger[]> levels = new ArrayList<>();
+		//nodes are fresh objects, so extending one cannot reach the caller's
+		// values or another level
+		HeftyInteger[] level = new HeftyInteger[values.length];
+		for (int i = 0; i < values.length; i++) {
+			level[i] = new HeftyInteger(values[i].signum, values[i].mag);
+		}
+		levels.add(level);
+		while (level.length > 1) {
+			HeftyInteger[] below = level;
+			HeftyInteger[] next = new HeftyInteger[(below.length + 1) / 2];
+			List<ForkJoinTask<HeftyInteger>> tasks = new ArrayList<>();
+			for (int i = 0; i + 1 < below.length; i += 2) {
+				HeftyInteger a = below[i], b = below[i + 1];
+				if (pool == null) {
+					next[i / 2] = a.multiply(b);
+				}
+				else {
+					tasks.add(pool.submit(() -> treeProduct(a, b)));
+				}
+			}
+			for (int i = 0; i < tasks.size(); i++) {
+				next[i] = tasks.get(i).join();
+			}
+			if ((below.length & 1) != 0) {
+				HeftyInteger last = below[below.length - 1];
+				next[next.length - 1] = new HeftyInteger(last.signum, last.mag);
+			}
+			levels.add(next);
+			level = next;
+		}
+		return levels.toArray(new HeftyInteger[0][]);
+	}
+
+	/**
+	 * Reduce x by every leaf of a product tree, going down from the root so
+	 * each node is reduced by the remainder of its parent, which is no
+	 * bigger than the node itself. For batch GCD, pass the product of the
+	 * keys and a tree built over their squares.
+	 * @param x the HeftyInteger to reduce
+	 * @param tree levels from productTree over positive values
+	 * @return x mod each leaf, in the order of the leaves
+	 */
+	public static HeftyInteger[] remainderTree(HeftyInteger x, HeftyInteger[][] tree) {
+		return remainderTree(x, tree, null);
+	}
+
+	/**
+	 * Reduce x by every leaf of a product tree as remainderTree(x, tree)
+	 * does, running the reductions of each level as tasks in the given pool
+	 * @param x the HeftyInteger to reduce
+	 * @param tree levels from productTree over positive values
+	 * @param pool the pool to reduce in, or null to work sequentially
+	 * @return x mod each leaf, in the order of the leaves
+	 */
+	public static HeftyInteger[] remainderTree(HeftyInteger x, HeftyInteger[][] tree, ForkJoinPool pool) {
+		HeftyInteger[] rems = {x.mod(tree[tree.length - 1][0])};
+		for (int level = tree.length - 2; level >= 0; level--) {
+			HeftyInteger[] nodes = tree[level], above = rems;
+			HeftyInteger[] next = new HeftyInteger[nodes.length];
+			List<ForkJoinTask<HeftyInteger>> tasks = new ArrayList<>();
+			for (int i = 0; i < nodes.length; i++) {
+				//node i of a level was paired into node i / 2 of the next
+				HeftyInteger r = above[i / 2], m = nodes[i];
+				if (pool == null) {
+					next[i] = r.mod(m);
+				}
+				else {
+					tasks.add(pool.submit(() -> r.mod(m)));
+				}
+			}
+			for (int i = 0; i < tasks.size(); i++) {
+				next[i] = tasks.get(i).join();
+			}
+			rems = next;
+		}
+		return rems;
+	}
+
+	/**
+	 * Multiply two nodes of a product tree from inside a pool task, letting
+	 * the sub-products of large operands fork as further tasks
+	 */
+	private static HeftyInteger treeProduct(HeftyInteger a, HeftyInteger b) {
+		if (a.signum == 0 || b.signum == 0) {
+			return new HeftyInteger(0, new int[0]);
+		}
+		return new HeftyInteger(a.signum * b.signum, multiplyMag(a.mag, b.mag, true));
+	}
+
+	/**
+	 * Compute the product of this and other using every core of the common
+	 * ForkJoinPool
+	 * @param other HeftyInteger to multiply by this
+	 * @return product of this and other
+	 */
+	public HeftyInteger parallelMultiply(HeftyInteger other) {
+		return multiply(other, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Compute the product of this and other, running the recursive
+	 * sub-products of large operands as tasks in the given pool
+	 * @param other HeftyInteger to multiply by this
+	 * @param pool the pool to run the multiplication in
+	 * @return product of this and other
+	 */
+	public HeftyInteger multiply(HeftyInteger other, ForkJoinPool pool) {
+		if (signum == 0 || other.signum == 0) {
+			return new HeftyInteger(0, new int[0]);
+		}
+		int[] product = pool.invoke(new MultiplyTask(mag, other.mag));
+		return new HeftyInteger(signum * other.signum, product);
+	}
+
+	/**
+	 * Divide this by divisor, rounding the quotient toward zero
+	 * @param divisor the nonzero HeftyInteger to divide by
+	 * @return the quotient this / divisor
+	 */
+	public HeftyInteger divide(HeftyInteger divisor) {
+		return divideAndRemainder(divisor)[0];
+	}
+
+	/**
+	 * Reduce this modulo a positive modulus
+	 * @param m the modulus, must be positive
+	 * @return this mod m, always in the range [0, m)
+	 */
+	public HeftyInteger mod(HeftyInteger m) {
+		if (m.signum <= 0) {
+			throw new ArithmeticException("Modulus not positive");
+		}
+		HeftyInteger r = divideAndRemainder(m)[1];
+		return (r.signum < 0) ? r.add(m) : r;
+	}
+
+	/**
+	 * Divide this by divisor using Knuth's Algorithm D on the limbs
+	 * @param divisor the nonzero HeftyInteger to divide by
+	 * @return an array structured as follows:
+	 *   0:  the quotient, rounded toward zero
+	 *   1:  the remainder, which has the sign of this
+	 * such that this == divisor * quotient + remainder
+	 */
+	public HeftyInteger[] divideAndRemainder(HeftyInteger divisor) {
+		if (divisor.signum == 0) {
+			throw new ArithmeticException("Division by zero");
+		}
+		int[][] qr = divideMag(mag, divisor.mag);
+		return new HeftyInteger[] {
+				new HeftyInteger(signum * divisor.signum, qr[0]),
+				new HeftyInteger(signum, qr[1])};
+	}
+
+	/**
+	 * Run the extended Euclidean algorithm on this and other
+	 * @param other another HeftyInteger
+	 * @return an array structured as follows:
+	 *   0:  the GCD of this and other
+	 *   1:  a valid x value
+	 *   2:  a valid y value
+	 * such that this * x + other * y == GCD in index 0
+	 */
+	public HeftyInteger[] XGCD(HeftyInteger other) {
+		//only work with magnitudes, larger first, then fix up the signs
+		int[] u = mag, v = other.mag;
+		boolean swapped = compareMag(u, v) < 0;
+		if (swapped) {
+			u = other.mag;
+			v = mag;
+		}
+
+		HeftyInteger g, s, t;
+		if (v.length == 0) {
+			g = new HeftyInteger(1, u);
+			s = ONE;
+			t = ZERO;
+		}
+		else {
+			HeftyInteger[] gs = (v.length >= HGCD_THRESHOLD) ? halfGcdXGCD(u, v) : lehmerXGCD(u, v);
+			g = gs[0];
+			s = gs[1];
+
+			//the second coefficient follows from g = u*s + v*t
+			t = g.subtract(new HeftyInteger(1, u).multiply(s)).divide(new HeftyInteger(1, v));
+		}
+
+		HeftyInteger x = swapped ? t : s, y = swapped ? s : t;
+		if (signum < 0) {
+			x = x.negate();
+		}
+		if (other.signum < 0) {
+			y = y.negate();
+		}
+		return new HeftyInteger[]{unshared(g), unshared(x), unshared(y)};
+	}
+
+	/**
+	 * Lehmer's extended GCD (Knuth, TAOCP vol. 2, 4.5.2, Algorithm L).
+	 * Runs Euclid on the leading 31 bits of both remainders using machine
+	 * words for as long as the quotients are certain to match the full
+	 * precision ones, then applies all of those steps to the remainders and
+	 * to the Bezout coefficient of u at once. Everything happens in a fixed
+	 * set of buffers, and the coefficient is carried forward so no quotients
+	 * need to be stored.
+	 * @param u magnitude, u >= v
+	 * @param v nonzero magnitude
+	 * @return {gcd(u, v), s} with u*s == gcd(u, v) mod v
+	 */
+	private static HeftyInteger[] lehmerXGCD(int[] u, int[] v) {
+		int n = u.length + 1;
+		int[] a = new int[n], b = new int[n], ta = new int[n], tb = new int[n];
+		System.arraycopy(u, 0, a, 0, u.length);
+		System.arraycopy(v, 0, b, 0, v.length);
+		int alen = u.length, blen = v.length;
+
+		//the coefficients of u in successive remainders alternate in sign,
+		// so only their magnitudes are kept along with the step parity
+		int[] sa = new int[n], sb = new int[n], ts = new int[n];
+		sa[0] = 1;
+		int salen = 1, sblen = 0;
+		boolean odd = false;
+
+		while (blen > 0) {
+			//leading 31 bits of a, and the bits of b in the same position
+			int shift = Math.max(0, limbBitLength(a, alen) - 31);
+			long xh = topBits(a, alen, shift), yh = topBits(b, blen, shift);
+
+			//simulate Euclid on the leading bits until the quotient is in doubt
+			long qa = 1, qb = 0, qc = 0, qd = 1;
+			int steps = 0;
+			while (yh + qc > 0 && yh + qd > 0) {
+				long q = (xh + qa) / (yh + qc);
+				if (q != (xh + qb) / (yh + qd)) {
+					break;
+				}
+				long tmp = qa - q * qc;
+				qa = qc;
+				qc = tmp;
+				tmp = qb - q * qd;
+				qb = qd;
+				qd = tmp;
+				tmp = xh - q * yh;
+				xh = yh;
+				yh = tmp;
+				steps++;
+			}
+
+			if (qb == 0) {
+				//no progress on the leading bits, do one full division step
+				int[] am = new int[alen], bm = new int[blen];
+				System.arraycopy(a, 0, am, 0, alen);
+				System.arraycopy(b, 0, bm, 0, blen);
+				int[][] qr = divideMag(am, bm);
+				int[] q = trim(qr[0]), r = trim(qr[1]);
+
+				int[] prod = trim(multiplyMag(q, trim(copyLimbs(sb, sblen)), false));
+				int[] snext = trim(addMag(copyLimbs(sa, salen), prod));
+
+				int[] tmp = a;
+				a = b;
+				alen = blen;
+				b = tmp;
+				clearLimbs(b);
+				System.arraycopy(r, 0, b, 0, r.length);
+				blen = r.length;
+
+				tmp = sa;
+				sa = sb;
+				salen = sblen;
+				sb = tmp;
+				clearLimbs(sb);
+				System.arraycopy(snext, 0, sb, 0, snext.length);
+				sblen = snext.length;
+				odd = !odd;
+				continue;
+			}
+
+			//apply the simulated steps; qa, qb have opposite signs, as do qc, qd,
+			// and the new remainders are both non-negative
+			int talen = combineRemainders(a, alen, qa, b, blen, qb, ta);
+			int tblen = combineRemainders(a, alen, qc, b, blen, qd, tb);
+			int tslen = mulAddLimbs(sa, salen, Math.abs(qa), sb, sblen, Math.abs(qb), ts);
+			sblen = mulAddLimbs(sa, salen, Math.abs(qc), sb, sblen, Math.abs(qd), sa);
+			salen = tslen;
+
+			int[] tmp = a;
+			a = ta;
+			ta = tmp;
+			alen = talen;
+			tmp = b;
+			b = tb;
+			tb = tmp;
+			blen = tblen;
+			tmp = sb;
+			sb = sa;
+			sa = ts;
+			ts = tmp;
+			if ((steps & 1) != 0) {
+				odd = !odd;
+			}
+		}
+
+		return new HeftyInteger[] {
+				new HeftyInteger(1, copyLimbs(a, alen)),
+				new HeftyInteger(odd ? -1 : 1, copyLimbs(sa, salen))};
+	}
+
+	/**
+	 * Subquadratic extended GCD: repeatedly reduce the pair with the
+	 * recursive half-GCD, which roughly halves its size using a handful of
+	 * fast multiplications, then finish with Lehmer once the numbers are
+	 * small. The reductions are accumulated in a matrix T with
+	 * (u, v) = T (a, b), which maps the final coefficient back to u.
+	 * @param u magnitude, u >= v
+	 * @param v nonzero magnitude
+	 * @return {gcd(u, v), s} with u*s == gcd(u, v) mod v
+	 */
+	private static HeftyInteger[] halfGcdXGCD(int[] u, int[] v) {
+		HeftyInteger a = new HeftyInteger(1, u), b = new HeftyInteger(1, v);
+		HeftyInteger[] t = identityMatrix();
+		int det = 1;
+
+		while (b.mag.length >= HGCD_THRESHOLD) {
+			HeftyInteger[] ab = {a, b};
+			HeftyInteger[] m = halfGcd(ab);
+			if (isIdentity(m)) {
+				//no reduction possible, take one plain Euclid step instead
+				//  (a, b) = [[q, 1], [1, 0]] (b, a mod b)
+				HeftyInteger[] qr = a.divideAndRemainder(b);
+				m = new HeftyInteger[] {qr[0], ONE, ONE, ZERO};
+				ab[0] = b;
+				ab[1] = qr[1];
+				det = -det;
+			}
+			t = multiplyMatrix(t, m);
+			a = ab[0];
+			b = ab[1];
+
+			//keep the larger value first
+			if (compareMag(a.mag, b.mag) < 0) {
+				t = new HeftyInteger[] {t[1], t[0], t[3], t[2]};
+				HeftyInteger tmp = a;
+				a = b;
+				b = tmp;
+				det = -det;
+			}
+		}
+
+		//finish on the reduced pair, giving g = a*x + b*y
+		HeftyInteger g, x, y;
+		if (b.signum == 0) {
+			g = a;
+			x = ONE;
+			y = ZERO;
+		}
+		else {
+			HeftyInteger[] gs = lehmerXGCD(a.mag, b.mag);
+			g = gs[0];
+			x = gs[1];
+			y = g.subtract(a.multiply(x)).divide(b);
+		}
+
+		//(x, y) T^-1, where T^-1 = det * adjugate(T); only u's part is needed
+		HeftyInteger s = x.multiply(t[3]).subtract(y.multiply(t[2]));
+		if (det < 0) {
+			s = s.negate();
+		}
+
+		//bring the coefficient into (-v/g, v/g] as the plain engine would
+		HeftyInteger vg = new HeftyInteger(1, v).divide(g);
+		s = s.divideAndRemainder(vg)[1];
+		return new HeftyInteger[] {g, s};
+	}
+
+	/**
+	 * Half-GCD (Moller, "On Schonhage's algorithm and subquadratic integer
+	 * gcd computation", 2008). With n the bit length of the larger value and
+	 * s = n/2 + 1, reduces (a, b) in place to (a', b'), both still at least
+	 * 2^s and differing by less than 2^s, so that (a, b) = M (a', b').
+	 * M has non-negative entries and determinant 1.
+	 * The top halves are reduced recursively twice, and the matrices found
+	 * are applied to the full values, which is safe because stopping at 2^s
+	 * leaves room for the discarded low bits.
+	 * @param ab the non-negative pair {a, b}, replaced by {a', b'}
+	 * @return M as {m00, m01, m10, m11}
+	 */
+	private static HeftyInteger[] halfGcd(HeftyInteger[] ab) {
+		int n = Math.max(magBitLength(ab[0].mag), magBitLength(ab[1].mag));
+		int s = n / 2 + 1;
+		HeftyInteger[] m = identityMatrix();
+		if (magBitLength(ab[0].mag) <= s || magBitLength(ab[1].mag) <= s) {
+			return m;
+		}
+		if (n < HGCD_BASE_BITS) {
+			halfGcdSteps(ab, s, m, Integer.MAX_VALUE);
+			return m;
+		}
+
+		//reduce the top n - s bits
+		m = halfGcdTop(ab, s);
+
+		//one plain step guarantees the second call works on about n/2 bits
+		if (halfGcdSteps(ab, s, m, 1) == 0) {
+			return m;
+		}
+
+		//reduce the top 2(n' - s) bits, leaving values just above 2^s
+		int nn = Math.max(magBitLength(ab[0].mag), magBitLength(ab[1].mag));
+		if (nn > s + 1) {
+			m = multiplyMatrix(m, halfGcdTop(ab, 2 * s - nn));
+		}
+
+		//a few more plain steps finish the reduction
+		halfGcdSteps(ab, s, m, Integer.MAX_VALUE);
+		return m;
+	}
+
+	/**
+	 * Run the half-GCD on (a >> p, b >> p) and apply the resulting matrix
+	 * to the full pair in place
+	 * @return the matrix found
+	 */
+	private static HeftyInteger[] halfGcdTop(HeftyInteger[] ab, int p) {
+		HeftyInteger a = ab[0], b = ab[1];
+		HeftyInteger[] top = {
+				new HeftyInteger(1, shiftRightMag(a.mag, p)),
+				new HeftyInteger(1, shiftRightMag(b.mag, p))};
+		HeftyInteger[] m = halfGcd(top);
+		if (!isIdentity(m)) {
+			//(a', b') = M^-1 (a, b), with M^-1 = [[m11, -m01], [-m10, m00]]
+			ab[0] = m[3].multiply(a).subtract(m[1].multiply(b));
+			ab[1] = m[0].multiply(b).subtract(m[2].multiply(a));
+		}
+		return m;
+	}
+
+	/**
+	 * Plain reduction steps of the half-GCD: subtract the largest multiple
+	 * of the smaller value that keeps the larger at least 2^s, stopping
+	 * once the two differ by less than 2^s. Updates ab and m in place.
+	 * @param limit maximum number of steps to take
+	 * @return the number of steps taken
+	 */
+	private static int halfGcdSteps(HeftyInteger[] ab, int s, HeftyInteger[] m, int limit) {
+		int[] bound = new int[(s >>> 5) + 1];
+		bound[s >>> 5] = 1 << (s & 31);
+		HeftyInteger pow = new HeftyInteger(1, bound);
+
+		int steps = 0;
+		while (steps < limit) {
+			int big = (compareMag(ab[0].mag, ab[1].mag) >= 0) ? 0 : 1;
+			HeftyInteger x = ab[big], y = ab[1 - big];
+			if (compareMag(x.subtract(y).mag, pow.mag) < 0) {
+				break;
+			}
+			HeftyInteger q = x.subtract(pow).divide(y);
+			if (q.signum == 0) {
+				break;
+			}
+			ab[big] = x.subtract(q.multiply(y));
+
+			//M = M [[1, q], [0, 1]] when a was reduced, M [[1, 0], [q, 1]]
+			// when b was
+			int from = big, to = 1 - big;
+			m[to] = m[to].add(q.multiply(m[from]));
+			m[to + 2] = m[to + 2].add(q.multiply(m[from + 2]));
+			steps++;
+		}
+		return steps;
+	}
+
+	/**
+	 * Product of two 2x2 matrices stored as {m00, m01, m10, m11}
+	 */
+	private static HeftyInteger[] multiplyMatrix(HeftyInteger[] x, HeftyInteger[] y) {
+		return new HeftyInteger[] {
+				x[0].multiply(y[0]).add(x[1].multiply(y[2])),
+				x[0].multiply(y[1]).add(x[1].multiply(y[3])),
+				x[2].multiply(y[0]).add(x[3].multiply(y[2])),
+				x[2].multiply(y[1]).add(x[3].multiply(y[3]))};
+	}
+
+	private static HeftyInteger[] identityMatrix() {
+		return new HeftyInteger[] {ONE, ZERO, ZERO, ONE};
+	}
+
+	private static boolean isIdentity(HeftyInteger[] m) {
+		return m[1].signum == 0 && m[2].signum == 0;
+	}
+
+	/**
+	 * Compute ca*a + cb*b where the coefficients have opposite signs and the
+	 * result is known to be non-negative
+	 * @return length of the trimmed result written to out
+	 */
+	private static int combineRemainders(int[] a, int alen, long ca, int[] b, int blen, long cb, int[] out) {
+		if (ca >= 0) {
+			return mulSubLimbs(a, alen, ca, b, blen, -cb, out);
+		}
+		return mulSubLimbs(b, blen, cb, a, alen, -ca, out);
+	}
+
+	/**
+	 * Compute cx*x + cy*y into out for 0 <= cx, cy < 2^31
+	 * @return length of the trimmed result
+	 */
+	private static int mulAddLimbs(int[] x, int xlen, long cx, int[] y, int ylen, long cy, int[] out) {
+		int len = Math.max(xlen, ylen);
+		long carry = 0;
+		for (int i = 0; i < len; i++) {
+			long px = (i < xlen) ? cx * (x[i] & LONG_MASK) : 0;
+			long py = (i < ylen) ? cy * (y[i] & LONG_MASK) : 0;
+			//each product is below 2^63, so the sum fits in 64 unsigned bits
+			long sum = px + py + carry;
+			out[i] = (int) sum;
+			carry = sum >>> 32;
+		}
+		return finishLimbs(out, len, carry);
+	}
+
+	/**
+	 * Compute cx*x - cy*y into out for 0 <= cx, cy < 2^31 when the result is
+	 * known to be non-negative
+	 * @return length of the trimmed result
+	 */
+	private static int mulSubLimbs(int[] x, int xlen, long cx, int[] y, int ylen, long cy, int[] out) {
+		int len = Math.max(xlen, ylen);
+		long carry = 0;
+		for (int i = 0; i < len; i++) {
+			long px = (i < xlen) ? cx * (x[i] & LONG_MASK) : 0;
+			long py = (i < ylen) ? cy * (y[i] & LONG_MASK) : 0;
+			long diff = px - py + carry;
+			out[i] = (int) diff;
+			carry = diff >> 32;
+		}
+		return finishLimbs(out, len, carry);
+	}
+
+	/**
+	 * Store a final carry limb, clear the rest of a buffer and trim it
+	 * @return length of the trimmed result
+	 */
+	private static int finishLimbs(int[] out, int len, long carry) {
+		if (carry != 0) {
+			out[len++] = (int) carry;
+		}
+		for (int i = len; i < out.length; i++) {
+			out[i] = 0;
+		}
+		while (len > 0 && out[len - 1] == 0) {
+			len--;
+		}
+		return len;
+	}
+
+	/**
+	 * Number of significant bits in the first len limbs of a buffer
+	 */
+	private static int limbBitLength(int[] m, int len) {
+		if (len == 0) {
+			return 0;
+		}
+		return ((len - 1) << 5) + 32 - Integer.numberOfLeadingZeros(m[len - 1]);
+	}
+
+	/**
+	 * Extract m >> shift when the result is known to fit in 63 bits
+	 * @param len number of limbs in use in m
+	 */
+	private static long topBits(int[] m, int len, int shift) {
+		int idx = shift >>> 5;
+		long lo = (idx < len) ? (m[idx] & LONG_MASK) : 0;
+		long hi = (idx + 1 < len) ? (m[idx + 1] & LONG_MASK) : 0;
+		return ((hi << 32) | lo) >>> (shift & 31);
+	}
+
+	/**
+	 * Copy the first len limbs of a buffer into an exactly sized array
+	 */
+	private static int[] copyLimbs(int[] m, int len) {
+		int[] res = new int[len];
+		System.arraycopy(m, 0, res, 0, len);
+		return res;
+	}
+
+	/**
+	 * Zero every limb of a buffer
+	 */
+	private static void clearLimbs(int[] m) {
+		for (int i = 0; i < m.length; i++) {
+			m[i] = 0;
+		}
+	}
+
+	/**
+	 * Combine the two's complement forms of this and other limb by limb and
+	 * convert the result back to sign and magnitude in the same array
+	 * @param op 0 for AND, 1 for OR, 2 for XOR
+	 */
+	private HeftyInteger bitwise(HeftyInteger other, int op) {
+		int n = Math.max(mag.length, other.mag.length);
+		int nzx = firstNonzeroLimb(), nzy = other.firstNonzeroLimb();
+
+		//one extra limb holds the sign extension, and room for the
+		// magnitude of -2^(32n)
+		int[] res = new int[n + 1];
+		for (int i = 0; i <= n; i++) {
+			int x = twosComplementLimb(i, nzx), y = other.twosComplementLimb(i, nzy);
+			res[i] = (op == 0) ? (x & y) : (op == 1) ? (x | y) : (x ^ y);
+		}
+		if (res[n] == 0) {
+			return new HeftyInteger(1, res);
+		}
+
+		//negative, so negate in place to recover the magnitude
+		long carry = 1;
+		for (int i = 0; i <= n; i++) {
+			carry += ~res[i] & LONG_MASK;
+			res[i] = (int) carry;
+			carry >>>= 32;
+		}
+		return new HeftyInteger(-1, res);
+	}
+
+	/**
+	 * Return x, or a copy of it if it is one of the shared small values, for
+	 * results built from internal constants that are about to be returned
+	 */
+	private static HeftyInteger unshared(HeftyInteger x) {
+		return x.isCached() ? new HeftyInteger(x.signum, x.mag) : x;
+	}
+
+	/**
+	 * Check whether this is one of the shared instances in SMALL_VALUES
+	 */
+	private boolean isCached() {
+		if (mag.length > 1 || (mag.length == 1 && (mag[0] & LONG_MASK) > MAX_CACHED)) {
+			return false;
+		}
+		int v = (mag.length == 0) ? 0 : signum * mag[0];
+		return SMALL_VALUES[MAX_CACHED + v] == this;
+	}
+
+	/**
+	 * Find the index of the lowest nonzero limb of the magnitude
+	 * @return index of the first nonzero limb, or mag.length for zero
+	 */
+	private int firstNonzeroLimb() {
+		int i = 0;
+		while (i < mag.length && mag[i] == 0) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Get limb n of the (infinitely sign extended) two's complement form
+	 * @param n index of the limb, least significant first
+	 * @param nz index of the lowest nonzero magnitude limb
+	 * @return the requested 32 bits of two's complement representation
+	 */
+	private int twosComplementLimb(int n, int nz) {
+		if (n >= mag.length) {
+			return (signum < 0) ? -1 : 0;
+		}
+		if (signum >= 0) {
+			return mag[n];
+		}
+
+		//negation flips every bit above the lowest set one
+		if (n < nz) {
+			return 0;
+		}
+		return (n == nz) ? -mag[n] : ~mag[n];
+	}
+
+	/**
+	 * Remove leading zero limbs from a magnitude
+	 * @param m little-endian limbs
+	 * @return m itself if already trimmed, otherwise a shorter copy
+	 */
+	private static int[] trim(int[] m) {
+		int len = m.length;
+		while (len > 0 && m[len - 1] == 0) {
+			len--;
+		}
+		if (len == m.length) {
+			return m;
+		}
+		int[] res = new int[len];
+		System.arraycopy(m, 0, res, 0, len);
+		return res;
+	}
+
+	/**
+	 * Number of significant bits in a trimmed magnitude
+	 * @param m little-endian limbs with no leading zeros
+	 * @return bit length of m, 0 for zero
+	 */
+	static int magBitLength(int[] m) {
+		if (m.length == 0) {
+			return 0;
+		}
+		return ((m.length - 1) << 5) + 32 - Integer.numberOfLeadingZeros(m[m.length - 1]);
+	}
+
+	/**
+	 * Check whether a trimmed magnitude is an exact power of two
+	 * @param m little-endian limbs with no leading zeros
+	 * @return true if exactly one bit of m is set
+	 */
+	private static boolean isPowerOfTwo(int[] m) {
+		if (m.length == 0 || Integer.bitCount(m[m.length - 1]) != 1) {
+			return false;
+		}
+		for (int i = 0; i < m.length - 1; i++) {
+			if (m[i] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compare two trimmed magnitudes
+	 * @return negative, zero or positive as x is less than, equal to or
+	 * greater than y
+	 */
+	private static int compareMag(int[] x, int[] y) {
+		return compareMag(x, x.length, y, y.length);
+	}
+
+	/**
+	 * Compare the magnitudes held in the low xlen limbs of x and the low
+	 * ylen limbs of y, neither with leading zeros unless the lengths match
+	 * @return -1, 0 or 1 as x is less than, equal to or greater than y
+	 */
+	static int compareMag(int[] x, int xlen, int[] y, int ylen) {
+		if (xlen != ylen) {
+			return (xlen < ylen) ? -1 : 1;
+		}
+		for (int i = xlen - 1; i >= 0; i--) {
+			if (x[i] != y[i]) {
+				return ((x[i] & LONG_MASK) < (y[i] & LONG_MASK)) ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Add two magnitudes 32 bits at a time
+	 * @return untrimmed sum of x and y
+	 */
+	private static int[] addMag(int[] x, int[] y) {
+		//put the longer operand in x
+		if (x.length < y.length) {
+			int[] t = x;
+			x = y;
+			y = t;
+		}
+
+		int[] res = new int[x.length + 1];
+		long carry = 0;
+		int i = 0;
+		for (; i < y.length; i++) {
+			carry += (x[i] & LONG_MASK) + (y[i] & LONG_MASK);
+			res[i] = (int) carry;
+			carry >>>= 32;
+		}
+		for (; i < x.length; i++) {
+			carry += (x[i] & LONG_MASK);
+			res[i] = (int) carry;
+			carry >>>= 32;
+		}
+		res[i] = (int) carry;
+		return res;
+	}
+
+	/**
+	 * Subtract magnitude y from magnitude x, requires x >= y
+	 * @return untrimmed difference of x and y
+	 */
+	private static int[] subtractMag(int[] x, int[] y) {
+		int[] res = new int[x.length];
+		long borrow = 0;
+		int i = 0;
+		for (; i < y.length; i++) {
+			borrow = (x[i] & LONG_MASK) - (y[i] & LONG_MASK) + borrow;
+			res[i] = (int) borrow;
+			borrow >>= 32; //arithmetic shift leaves -1 on borrow, 0 otherwise
+		}
+		for (; i < x.length; i++) {
+			borrow = (x[i] & LONG_MASK) + borrow;
+			res[i] = (int) borrow;
+			borrow >>= 32;
+		}
+		return res;
+	}
+
+	/**
+	 * Multiply two magnitudes, choosing an algorithm by operand size
+	 * @param parallel true when running inside a ForkJoinPool and large
+	 * sub-products may be forked
+	 * @return untrimmed product of x and y
+	 */
+	private static int[] multiplyMag(int[] x, int[] y, boolean parallel) {
+		if (x == y) {
+			return squareMag(x, parallel);
+		}
+
+		int shorter = Math.min(x.length, y.length);
+		if (shorter < KARATSUBA_THRESHOLD || shorter < MIN_SPLIT_LIMBS) {
+			int[] res = new int[x.length + y.length];
+			schoolbookMultiply(x, x.length, y, y.length, res);
+			return res;
+		}
+		parallel = parallel && shorter >= PARALLEL_THRESHOLD;
+		if (shorter < TOOM3_THRESHOLD) {
+			return karatsuba(x, y, parallel);
+		}
+		if (shorter < NTT_THRESHOLD || !nttFits(x.length, y.length)) {
+			return toomCook3(x, y, parallel);
+		}
+		return nttMultiply(x, y, parallel);
+	}
+
+	/**
+	 * Square a magnitude, choosing an algorithm by operand size using the same
+	 * thresholds as multiplyMag
+	 * @return untrimmed square of x
+	 */
+	private static int[] squareMag(int[] x, boolean parallel) {
+		if (x.length < KARATSUBA_THRESHOLD || x.length < MIN_SPLIT_LIMBS) {
+			return schoolbookSquare(x);
+		}
+		parallel = parallel && x.length >= PARALLEL_THRESHOLD;
+		if (x.length < TOOM3_THRESHOLD) {
+			return karatsubaSquare(x, parallel);
+		}
+		if (x.length < NTT_THRESHOLD || !nttFits(x.length, x.length)) {
+			return toomSquare(x, parallel);
+		}
+		return nttMultiply(x, x, parallel);
+	}
+
+	/**
+	 * Multiply each x[i] by y[i], forking the products as separate tasks
+	 * when parallel. Pairs that share one array are squared.
+	 * @return untrimmed products, one per pair
+	 */
+	private static int[][] multiplyEach(int[][] x, int[][] y, boolean parallel) {
+		int[][] res = new int[x.length][];
+		if (!parallel) {
+			for (int i = 0; i < x.length; i++) {
+				res[i] = multiplyMag(x[i], y[i], false);
+			}
+			return res;
+		}
+
+		MultiplyTask[] tasks = new MultiplyTask[x.length];
+		for (int i = 0; i < x.length; i++) {
+			tasks[i] = new MultiplyTask(x[i], y[i]);
+		}
+		ForkJoinTask.invokeAll(tasks);
+		for (int i = 0; i < x.length; i++) {
+			res[i] = tasks[i].join();
+		}
+		return res;
+	}
+
+	/**
+	 * A magnitude product run as a fork/join task, which may in turn fork
+	 * its own sub-products
+	 */
+	private static class MultiplyTask extends RecursiveTask<int[]> {
+		private static final long serialVersionUID = 1L;
+
+		private final int[] x, y;
+
+		MultiplyTask(int[] x, int[] y) {
+			this.x = x;
+			this.y = y;
+		}
+
+		protected int[] compute() {
+			return multiplyMag(x, y, true);
+		}
+	}
+
+	/**
+	 * Look up the optional SIMD kernels. They need the jdk.incubator.vector
+	 * module at both compile and run time, so any failure to load them just
+	 * means the scalar loops are used.
+	 * @return the kernels, or null if they are not available
+	 */
+	private static LimbKernels loadVectorKernels() {
+		try {
+			return (LimbKernels) Class.forName("VectorLimbKernels").getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Report whether multiply is using the SIMD kernels
+	 * @return true if VectorLimbKernels loaded at startup
+	 */
+	static boolean vectorKernelsEnabled() {
+		return VECTOR_KERNELS != null;
+	}
+
+	/**
+	 * Grade school multiplication of two magnitudes, one limb pair at a time.
+	 * Writes into a caller supplied array. The scalar loop allocates nothing;
+	 * the vector kernel works in tiles through small fixed-size buffers kept
+	 * per thread, allocated on a thread's first call.
+	 * @param z receives the product, must hold at least xlen + ylen limbs
+	 * that are all zero
+	 */
+	static void schoolbookMultiply(int[] x, int xlen, int[] y, int ylen, int[] z) {
+		if (VECTOR_KERNELS != null && Math.min(xlen, ylen) >= VECTOR_THRESHOLD) {
+			VECTOR_KERNELS.multiply(x, xlen, y, ylen, z);
+			return;
+		}
+		for (int i = 0; i < xlen; i++) {
+			long xi = x[i] & LONG_MASK;
+			long carry = 0;
+			for (int j = 0; j < ylen; j++) {
+				carry += xi * (y[j] & LONG_MASK) + (z[i + j] & LONG_MASK);
+				z[i + j] = (int) carry;
+				carry >>>= 32;
+			}
+			z[i + ylen] = (int) carry;
+		}
+	}
+
+	/**
+	 * Grade school squaring: every cross product x[i]*x[j] with i < j is
+	 * computed once and doubled, then the diagonal squares are added
+	 * @return untrimmed square of x
+	 */
+	private static int[] schoolbookSquare(int[] x) {
+		int n = x.length;
+		int[] z = new int[2 * n];
+
+		//cross products above the diagonal
+		for (int i = 0; i < n - 1; i++) {
+			long xi = x[i] & LONG_MASK;
+			long carry = 0;
+			for (int j = i + 1; j < n; j++) {
+				carry += xi * (x[j] & LONG_MASK) + (z[i + j] & LONG_MASK);
+				z[i + j] = (int) carry;
+				carry >>>= 32;
+			}
+			z[i + n] = (int) carry;
+		}
+
+		//double them
+		int topBit = 0;
+		for (int i = 0; i < z.length; i++) {
+			int limb = z[i];
+			z[i] = (limb << 1) | topBit;
+			topBit = limb >>> 31;
+		}
+
+		//add the squares on the diagonal
+		long carry = 0;
+		for (int i = 0; i < n; i++) {
+			long sq = (x[i] & LONG_MASK) * (x[i] & LONG_MASK);
+			carry += (z[2 * i] & LONG_MASK) + (sq & LONG_MASK);
+			z[2 * i] = (int) carry;
+			carry >>>= 32;
+			carry += (z[2 * i + 1] & LONG_MASK) + (sq >>> 32);
+			z[2 * i + 1] = (int) carry;
+			carry >>>= 32;
+		}
+		return z;
+	}
+
+	/**
+	 * Karatsuba multiplication: split each operand into halves at the same
+	 * limb and compute the product from three half-size products
+	 *   x*y = z2*B^2 + ((xl+xh)(yl+yh) - z2 - z0)*B + z0
+	 * @return untrimmed product of x and y
+	 */
+	private static int[] karatsuba(int[] x, int[] y, boolean parallel) {
+		int half = (Math.max(x.length, y.length) + 1) >>> 1;
+
+		int[] xl = lowerLimbs(x, half), xh = upperLimbs(x, half);
+		int[] yl = lowerLimbs(y, half), yh = upperLimbs(y, half);
+
+		int[][] z = multiplyEach(
+				new int[][] {xl, xh, trim(addMag(xl, xh))},
+				new int[][] {yl, yh, trim(addMag(yl, yh))}, parallel);
+		return karatsubaCombine(z, half, x.length + y.length);
+	}
+
+	/**
+	 * Karatsuba squaring, with the three half-size products being squares
+	 * @return untrimmed square of x
+	 */
+	private static int[] karatsubaSquare(int[] x, boolean parallel) {
+		int half = (x.length + 1) >>> 1;
+
+		int[] xl = lowerLimbs(x, half), xh = upperLimbs(x, half);
+		int[] xs = trim(addMag(xl, xh));
+
+		int[][] operands = {xl, xh, xs};
+		int[][] z = multiplyEach(operands, operands, parallel);
+		return karatsubaCombine(z, half, 2 * x.length);
+	}
+
+	/**
+	 * Assemble a Karatsuba result from its three sub-products
+	 * @param z the products low*low, high*high and sum*sum
+	 * @param half split point in limbs
+	 * @param len length of the result
+	 * @return untrimmed product
+	 */
+	private static int[] karatsubaCombine(int[][] z, int half, int len) {
+		int[] z0 = trim(z[0]), z2 = trim(z[1]), z1 = z[2];
+
+		//middle term, computed in place
+		subtractFrom(z1, z0);
+		subtractFrom(z1, z2);
+		z1 = trim(z1);
+
+		int[] res = new int[len];
+		System.arraycopy(z0, 0, res, 0, z0.length);
+		addShifted(res, z1, half);
+		addShifted(res, z2, 2 * half);
+		return res;
+	}
+
+	/**
+	 * Toom-Cook 3-way multiplication: split each operand into thirds, treat
+	 * them as degree 2 polynomials, evaluate at 0, 1, -1, 2 and infinity,
+	 * multiply pointwise and interpolate the five product coefficients
+	 * (using Bodrato's sequence of exact divisions by 2 and 3)
+	 * @return untrimmed product of x and y
+	 */
+	private static int[] toomCook3(int[] x, int[] y, boolean parallel) {
+		int k = (Math.max(x.length, y.length) + 2) / 3;
+
+		HeftyInteger[] a = toomEvaluate(x, k);
+		HeftyInteger[] b = toomEvaluate(y, k);
+
+		//pointwise products; only the value at -1 can be negative
+		int[][] v = multiplyEach(
+				new int[][] {a[0].mag, a[1].mag, a[2].mag, a[3].mag, a[4].mag},
+				new int[][] {b[0].mag, b[1].mag, b[2].mag, b[3].mag, b[4].mag}, parallel);
+		return toomInterpolate(v, a[1].signum * b[1].signum, k, x.length + y.length);
+	}
+
+	/**
+	 * Toom-Cook 3-way squaring, with all five pointwise products being squares
+	 * @return untrimmed square of x
+	 */
+	private static int[] toomSquare(int[] x, boolean parallel) {
+		int k = (x.length + 2) / 3;
+
+		HeftyInteger[] a = toomEvaluate(x, k);
+		int[][] operands = {a[0].mag, a[1].mag, a[2].mag, a[3].mag, a[4].mag};
+		int[][] v = multiplyEach(operands, operands, parallel);
+		return toomInterpolate(v, 1, k, 2 * x.length);
+	}
+
+	/**
+	 * Split a magnitude into thirds and evaluate the resulting polynomial
+	 * @param k size of the lower parts in limbs
+	 * @return the values at 0, -1, 1, 2 and infinity
+	 */
+	private static HeftyInteger[] toomEvaluate(int[] x, int k) {
+		HeftyInteger a0 = toomSlice(x, 0, k), a1 = toomSlice(x, 1, k), a2 = toomSlice(x, 2, k);
+
+		HeftyInteger da1 = a2.add(a0);
+		HeftyInteger dam1 = da1.subtract(a1);
+		da1 = da1.add(a1);
+		HeftyInteger da2 = da1.add(a2);
+		da2 = da2.add(da2).subtract(a0);
+
+		return new HeftyInteger[] {a0, dam1, da1, da2, a2};
+	}
+
+	/**
+	 * Recover the product from its values at 0, -1, 1, 2 and infinity
+	 * @param v magnitudes of the pointwise products, in that order
+	 * @param signm1 sign of the product at -1 (the only one that can be
+	 * negative)
+	 * @param k size of the lower parts in limbs
+	 * @param len length of the result
+	 * @return untrimmed product
+	 */
+	private static int[] toomInterpolate(int[][] v, int signm1, int k, int len) {
+		HeftyInteger v0 = new HeftyInteger(1, v[0]);
+		HeftyInteger vm1 = new HeftyInteger(signm1, v[1]);
+		HeftyInteger v1 = new HeftyInteger(1, v[2]);
+		HeftyInteger v2 = new HeftyInteger(1, v[3]);
+		HeftyInteger vinf = new HeftyInteger(1, v[4]);
+
+		HeftyInteger t2 = v2.subtract(vm1).exactDivideBy3();
+		HeftyInteger tm1 = v1.subtract(vm1).exactHalve();
+		HeftyInteger t1 = v1.subtract(v0);
+		t2 = t2.subtract(t1).exactHalve();
+		t1 = t1.subtract(tm1).subtract(vinf);
+		t2 = t2.subtract(vinf.add(vinf));
+		tm1 = tm1.subtract(t2);
+
+		//every coefficient of the product polynomial is non-negative, so
+		// they can be summed straight into the result magnitude
+		int[] res = new int[len];
+		System.arraycopy(v0.mag, 0, res, 0, v0.mag.length);
+		addShifted(res, tm1.mag, k);
+		addShifted(res, t1.mag, 2 * k);
+		addShifted(res, t2.mag, 3 * k);
+		addShifted(res, vinf.mag, 4 * k);
+		return res;
+	}
+
+	/**
+	 * Extract one of the three Toom-Cook parts of a magnitude
+	 * @param part 0 for the lowest k limbs, 1 for the next k, 2 for the rest
+	 * @param k size of the lower parts in limbs
+	 * @return the part as a non-negative HeftyInteger
+	 */
+	private static HeftyInteger toomSlice(int[] m, int part, int k) {
+		int[] upper = upperLimbs(m, part * k);
+		return new HeftyInteger(1, (part == 2) ? upper : lowerLimbs(upper, k));
+	}
+
+	/**
+	 * Divide by 3 when the division is known to be exact
+	 * @return this / 3
+	 */
+	private HeftyInteger exactDivideBy3() {
+		int[] q = new int[mag.length];
+		long rem = 0;
+		for (int i = mag.length - 1; i >= 0; i--) {
+			long cur = (rem << 32) | (mag[i] & LONG_MASK);
+			q[i] = (int) (cur / 3);
+			rem = cur % 3;
+		}
+		return new HeftyInteger(signum, q);
+	}
+
+	/**
+	 * Divide by 2 when the division is known to be exact
+	 * @return this / 2
+	 */
+	private HeftyInteger exactHalve() {
+		int[] q = new int[mag.length];
+		for (int i = 0; i < mag.length; i++) {
+			int next = (i + 1 < mag.length) ? mag[i + 1] : 0;
+			q[i] = (mag[i] >>> 1) | (next << 31);
+		}
+		return new HeftyInteger(signum, q);
+	}
+
+	/**
+	 * Check whether a product is small enough for the NTT primes
+	 * @return true if the 16-bit digit convolution fits the transform length
+	 */
+	private static boolean nttFits(int xlen, int ylen) {
+		return 2L * (xlen + ylen) <= (1L << NTT_MAX_LOG);
+	}
+
+	/**
+	 * Multiply two magnitudes with a number theoretic transform. The operands
+	 * are cut into 16-bit digits and convolved modulo two NTT primes; every
+	 * convolution coefficient is below 2^57, which is less than the product
+	 * of the primes, so the Chinese remainder theorem recovers it exactly.
+	 * Passing the same array twice squares it with one forward transform.
+	 * @return untrimmed product of x and y
+	 */
+	private static int[] nttMultiply(int[] x, int[] y, boolean parallel) {
+		int digits = 2 * (x.length + y.length);
+		int n = Integer.highestOneBit(digits - 1) << 1;
+
+		long[] a1 = toDigits16(x, n), a2 = a1.clone();
+		long[] b1 = (x == y) ? a1 : toDigits16(y, n);
+		long[] b2 = (x == y) ? a2 : b1.clone();
+		if (parallel) {
+			//the two prime fields are independent
+			ForkJoinTask.invokeAll(
+					ForkJoinTask.adapt(() -> convolve(a1, b1, NTT_P1, NTT_G1)),
+					ForkJoinTask.adapt(() -> convolve(a2, b2, NTT_P2, NTT_G2)));
+		}
+		else {
+			convolve(a1, b1, NTT_P1, NTT_G1);
+			convolve(a2, b2, NTT_P2, NTT_G2);
+		}
+
+		//combine the residues and propagate carries 16 bits at a time
+		long inv = powMod(NTT_P1 % NTT_P2, NTT_P2 - 2, NTT_P2);
+		int[] res = new int[x.length + y.length];
+		long carry = 0;
+		for (int i = 0; i < digits; i++) {
+			long t = (a2[i] - a1[i] % NTT_P2 + NTT_P2) % NTT_P2 * inv % NTT_P2;
+			carry += a1[i] + NTT_P1 * t;
+			res[i >>> 1] |= (int) (carry & 0xFFFF) << ((i & 1) << 4);
+			carry >>>= 16;
+		}
+		return res;
+	}
+
+	/**
+	 * Split a magnitude into 16-bit digits, zero padded to the transform size
+	 * @param n transform length
+	 */
+	private static long[] toDigits16(int[] m, int n) {
+		long[] d = new long[n];
+		for (int i = 0; i < m.length; i++) {
+			d[2 * i] = m[i] & 0xFFFF;
+			d[2 * i + 1] = m[i] >>> 16;
+		}
+		return d;
+	}
+
+	/**
+	 * Cyclic convolution of a and b modulo p, left in a. If b is a itself it
+	 * is only transformed once.
+	 * @param g primitive root modulo p
+	 */
+	private static void convolve(long[] a, long[] b, long p, long g) {
+		ntt(a, false, p, g);
+		if (b != a) {
+			ntt(b, false, p, g);
+		}
+		for (int i = 0; i < a.length; i++) {
+			a[i] = a[i] * b[i] % p;
+		}
+		ntt(a, true, p, g);
+	}
+
+	/**
+	 * In-place iterative radix-2 number theoretic transform
+	 * @param a values modulo p, length a power of two
+	 * @param invert true for the inverse transform (including the 1/n scale)
+	 */
+	private static void ntt(long[] a, boolean invert, long p, long g) {
+		int n = a.length;
+
+		//bit reversal permutation
+		for (int i = 1, j = 0; i < n; i++) {
+			int bit = n >>> 1;
+			for (; (j & bit) != 0; bit >>>= 1) {
+				j ^= bit;
+			}
+			j ^= bit;
+			if (i < j) {
+				long t = a[i];
+				a[i] = a[j];
+				a[j] = t;
+			}
+		}
+
+		//butterflies, with the twiddle factors of each stage computed once
+		long[] w = new long[Math.max(1, n >>> 1)];
+		for (int len = 2; len <= n; len <<= 1) {
+			long root = powMod(g, (p - 1) / len, p);
+			if (invert) {
+				root = powMod(root, p - 2, p);
+			}
+			int half = len >>> 1;
+			w[0] = 1;
+			for (int j = 1; j < half; j++) {
+				w[j] = w[j - 1] * root % p;
+			}
+			for (int i = 0; i < n; i += len) {
+				for (int j = 0; j < half; j++) {
+					long u = a[i + j];
+					long v = a[i + j + half] * w[j] % p;
+					a[i + j] = (u + v < p) ? u + v : u + v - p;
+					a[i + j + half] = (u - v >= 0) ? u - v : u - v + p;
+				}
+			}
+		}
+
+		if (invert) {
+			long nInv = powMod(n, p - 2, p);
+			for (int i = 0; i < n; i++) {
+				a[i] = a[i] * nInv % p;
+			}
+		}
+	}
+
+	/**
+	 * Modular exponentiation on machine words, for moduli below 2^31
+	 * @return b^e mod p
+	 */
+	private static long powMod(long b, long e, long p) {
+		long res = 1;
+		b %= p;
+		while (e > 0) {
+			if ((e & 1) != 0) {
+				res = res * b % p;
+			}
+			b = b * b % p;
+			e >>>= 1;
+		}
+		return res;
+	}
+
+	/**
+	 * Divide magnitude u by nonzero magnitude v, choosing an algorithm by
+	 * operand size
+	 * @return {quotient, remainder}, both untrimmed
+	 */
+	private static int[][] divideMag(int[] u, int[] v) {
+		if (v.length >= BURNIKEL_ZIEGLER_THRESHOLD
+				&& u.length - v.length >= BURNIKEL_ZIEGLER_OFFSET) {
+			return burnikelZiegler(u, v);
+		}
+		return knuthDivide(u, v);
+	}
+
+	/**
+	 * Divide magnitude u by nonzero magnitude v (Knuth, TAOCP vol. 2,
+	 * 4.3.1, Algorithm D). Each quotient limb is estimated from the top two
+	 * limbs of the running remainder, corrected at most twice, and then
+	 * applied with a single multiply-and-subtract pass over the divisor.
+	 * @return {quotient, remainder}, both untrimmed
+	 */
+	private static int[][] knuthDivide(int[] u, int[] v) {
+		if (compareMag(u, v) < 0) {
+			return new int[][] {new int[0], u};
+		}
+		if (v.length == 1) {
+			return divideByLimb(u, v[0]);
+		}
+
+		int n = v.length, m = u.length;
+
+		//normalize so the top bit of the divisor is set, which keeps the
+		// quotient estimates within 2 of the true limb
+		int shift = Integer.numberOfLeadingZeros(v[n - 1]);
+		int[] vn = shiftLeftBits(v, shift, n);
+		int[] un = shiftLeftBits(u, shift, m + 1);
+
+		int[] q = new int[m - n + 1];
+		long vTop = vn[n - 1] & LONG_MASK, vNext = vn[n - 2] & LONG_MASK;
+
+		for (int j = m - n; j >= 0; j--) {
+			//estimate the quotient limb from the top of the remainder
+			long num = ((un[j + n] & LONG_MASK) << 32) | (un[j + n - 1] & LONG_MASK);
+			long qhat = Long.divideUnsigned(num, vTop);
+			long rhat = num - qhat * vTop;
+			while (qhat > LONG_MASK || Long.compareUnsigned(qhat * vNext,
+					(rhat << 32) | (un[j + n - 2] & LONG_MASK)) > 0) {
+				qhat--;
+				rhat += vTop;
+				if (rhat > LONG_MASK) {
+					break;
+				}
+			}
+
+			//multiply and subtract
+			long carry = 0, borrow = 0;
+			for (int i = 0; i < n; i++) {
+				long p = qhat * (vn[i] & LONG_MASK) + carry;
+				carry = p >>> 32;
+				long t = (un[i + j] & LONG_MASK) - (p & LONG_MASK) + borrow;
+				un[i + j] = (int) t;
+				borrow = t >> 32;
+			}
+			long t = (un[j + n] & LONG_MASK) - carry + borrow;
+			un[j + n] = (int) t;
+
+			//the estimate was still one too large, so add the divisor back
+			if (t < 0) {
+				qhat--;
+				carry = 0;
+				for (int i = 0; i < n; i++) {
+					carry += (un[i + j] & LONG_MASK) + (vn[i] & LONG_MASK);
+					un[i + j] = (int) carry;
+					carry >>>= 32;
+				}
+				un[j + n] += (int) carry;
+			}
+			q[j] = (int) qhat;
+		}
+
+		//undo the normalization on the remainder
+		return new int[][] {q, shiftRightBits(un, shift, n)};
+	}
+
+	/**
+	 * Recursive division (Burnikel and Ziegler, "Fast Recursive Division",
+	 * 1998). The divisor is padded to a block size n that halves cleanly
+	 * down to the Algorithm D threshold, the dividend is cut into blocks of
+	 * n limbs, and each pair of blocks is divided recursively so that most
+	 * of the work is done by multiplyMag.
+	 * @return {quotient, remainder}, both untrimmed
+	 */
+	private static int[][] burnikelZiegler(int[] a, int[] b) {
+		if (compareMag(a, b) < 0) {
+			return new int[][] {new int[0], a};
+		}
+
+		//block size n = j*m with m a power of two, so n can be halved down
+		// to roughly the threshold
+		int r = b.length;
+		int m = 1 << (32 - Integer.numberOfLeadingZeros(r / BURNIKEL_ZIEGLER_THRESHOLD));
+		int j = (r + m - 1) / m;
+		int n = j * m;
+
+		//normalize so the divisor fills exactly n limbs with its top bit set
+		int sigma = 32 * n - magBitLength(b);
+		int[] bn = shiftLeftMag(b, sigma);
+		int[] an = shiftLeftMag(a, sigma);
+
+		//number of blocks, leaving the top block below the divisor
+		int t = Math.max(2, (magBitLength(an) + 32 * n) / (32 * n));
+
+		int[] q = new int[(t - 1) * n];
+		int[] z = upperLimbs(an, (t - 2) * n);
+		for (int i = t - 2; ; i--) {
+			int[][] qr = divide2n1n(z, bn, n);
+			System.arraycopy(qr[0], 0, q, i * n, Math.min(qr[0].length, n));
+			if (i == 0) {
+				return new int[][] {q, shiftRightMag(qr[1], sigma)};
+			}
+			z = joinLimbs(qr[1], lowerLimbs(upperLimbs(an, (i - 1) * n), n), n);
+		}
+	}
+
+	/**
+	 * Divide a 2n-limb value by an n-limb normalized divisor, requires
+	 * a < b * B^n
+	 * @return {quotient, remainder}, both untrimmed
+	 */
+	private static int[][] divide2n1n(int[] a, int[] b, int n) {
+		if ((n & 1) != 0 || n < BURNIKEL_ZIEGLER_THRESHOLD) {
+			return knuthDivide(trim(a), b);
+		}
+		int half = n >>> 1;
+
+		//treat a as four half-blocks and divide the top three, then the
+		// remainder followed by the last half-block
+		int[][] qr1 = divide3n2n(upperLimbs(a, half), b, half);
+		int[] a4 = lowerLimbs(a, half);
+		int[][] qr2 = divide3n2n(joinLimbs(qr1[1], a4, half), b, half);
+
+		return new int[][] {joinLimbs(qr1[0], qr2[0], half), qr2[1]};
+	}
+
+	/**
+	 * Divide a 3n-limb value by a 2n-limb normalized divisor, requires
+	 * a < b * B^n
+	 * @return {quotient, remainder}, both untrimmed
+	 */
+	private static int[][] divide3n2n(int[] a, int[] b, int n) {
+		int[] a1 = trim(upperLimbs(a, 2 * n)), a12 = upperLimbs(a, n), a3 = lowerLimbs(a, n);
+		int[] b1 = upperLimbs(b, n), b2 = lowerLimbs(b, n);
+
+		//estimate the quotient from the top limbs of both
+		HeftyInteger qhat, r1;
+		if (compareMag(a1, b1) < 0) {
+			int[][] qr = divide2n1n(a12, b1, n);
+			qhat = new HeftyInteger(1, qr[0]);
+			r1 = new HeftyInteger(1, qr[1]);
+		}
+		else {
+			//quotient saturates at B^n - 1, so r1 = a12 - (B^n - 1) * b1
+			int[] ones = new int[n];
+			for (int i = 0; i < n; i++) {
+				ones[i] = -1;
+			}
+			qhat = new HeftyInteger(1, ones);
+			r1 = new HeftyInteger(1, a12).subtract(new HeftyInteger(1, joinLimbs(b1, new int[0], n)))
+					.add(new HeftyInteger(1, b1));
+		}
+
+		//correct the estimate using the low half of the divisor; it is at
+		// most two too large
+		HeftyInteger d = new HeftyInteger(1, multiplyMag(qhat.mag, b2, false));
+		HeftyInteger rhat = new HeftyInteger(r1.signum, joinLimbs(r1.mag, new int[0], n))
+				.add(new HeftyInteger(1, a3)).subtract(d);
+		HeftyInteger bh = new HeftyInteger(1, b);
+		while (rhat.signum < 0) {
+			rhat = rhat.add(bh);
+			qhat = qhat.add(-1);
+		}
+		return new int[][] {qhat.mag, rhat.mag};
+	}
+
+	/**
+	 * Concatenate two magnitudes as high * B^n + low
+	 * @param low a magnitude with at most n limbs
+	 * @return untrimmed result
+	 */
+	private static int[] joinLimbs(int[] high, int[] low, int n) {
+		int[] res = new int[n + high.length];
+		System.arraycopy(low, 0, res, 0, Math.min(low.length, n));
+		System.arraycopy(high, 0, res, n, high.length);
+		return res;
+	}
+
+	/**
+	 * Shift a magnitude left by any number of bits, sizing the result
+	 * exactly so it is the only allocation
+	 * @return trimmed m * 2^bits
+	 */
+	private static int[] shiftLeftMag(int[] m, int bits) {
+		int mlen = trimmedLength(m);
+		if (mlen == 0) {
+			return new int[0];
+		}
+		int limbs = bits >>> 5, shift = bits & 31;
+		if (shift == 0) {
+			int[] res = new int[mlen + limbs];
+			System.arraycopy(m, 0, res, limbs, mlen);
+			return res;
+		}
+		int spill = m[mlen - 1] >>> (32 - shift);
+		int[] res = new int[mlen + limbs + ((spill != 0) ? 1 : 0)];
+		int carry = 0;
+		for (int i = 0; i < mlen; i++) {
+			res[i + limbs] = (m[i] << shift) | carry;
+			carry = m[i] >>> (32 - shift);
+		}
+		if (spill != 0) {
+			res[mlen + limbs] = spill;
+		}
+		return res;
+	}
+
+	/**
+	 * Shift a magnitude right by any number of bits, discarding the low
+	 * bits, sizing the result exactly so it is the only allocation
+	 * @return trimmed m / 2^bits
+	 */
+	private static int[] shiftRightMag(int[] m, int bits) {
+		int mlen = trimmedLength(m);
+		int limbs = bits >>> 5, shift = bits & 31;
+		if (limbs >= mlen) {
+			return new int[0];
+		}
+		int len = mlen - limbs;
+		if (shift == 0) {
+			int[] res = new int[len];
+			System.arraycopy(m, limbs, res, 0, len);
+			return res;
+		}
+		if ((m[mlen - 1] >>> shift) == 0) {
+			len--;
+		}
+		int[] res = new int[len];
+		for (int i = 0; i < len; i++) {
+			int next = (i + limbs + 1 < mlen) ? m[i + limbs + 1] : 0;
+			res[i] = (m[i + limbs] >>> shift) | (next << (32 - shift));
+		}
+		return res;
+	}
+
+	/**
+	 * Count the limbs of m below its leading zero limbs
+	 */
+	private static int trimmedLength(int[] m) {
+		int len = m.length;
+		while (len > 0 && m[len - 1] == 0) {
+			len--;
+		}
+		return len;
+	}
+
+	/**
+	 * Divide a magnitude by a single limb
+	 * @return {quotient, remainder}, both untrimmed
+	 */
+	private static int[][] divideByLimb(int[] u, int d) {
+		long dl = d & LONG_MASK;
+		int[] q = new int[u.length];
+		long rem = 0;
+		for (int i = u.length - 1; i >= 0; i--) {
+			long cur = (rem << 32) | (u[i] & LONG_MASK);
+			q[i] = (int) Long.divideUnsigned(cur, dl);
+			rem = Long.remainderUnsigned(cur, dl);
+		}
+		return new int[][] {q, new int[] {(int) rem}};
+	}
+
+	/**
+	 * Shift a magnitude left by fewer than 32 bits
+	 * @param shift number of bits, 0 to 31
+	 * @param len length of the result, enough to hold the shifted value
+	 */
+	private static int[] shiftLeftBits(int[] m, int shift, int len) {
+		int[] res = new int[len];
+		if (shift == 0) {
+			System.arraycopy(m, 0, res, 0, Math.min(m.length, len));
+			return res;
+		}
+		int carry = 0;
+		for (int i = 0; i < m.length; i++) {
+			res[i] = (m[i] << shift) | carry;
+			carry = m[i] >>> (32 - shift);
+		}
+		if (m.length < len) {
+			res[m.length] = carry;
+		}
+		return res;
+	}
+
+	/**
+	 * Shift the low limbs of a magnitude right by fewer than 32 bits
+	 * @param shift number of bits, 0 to 31
+	 * @param len number of low limbs of m to shift
+	 */
+	private static int[] shiftRightBits(int[] m, int shift, int len) {
+		int[] res = new int[len];
+		if (shift == 0) {
+			System.arraycopy(m, 0, res, 0, len);
+			return res;
+		}
+		for (int i = 0; i < len; i++) {
+			int next = (i + 1 < m.length) ? m[i + 1] : 0;
+			res[i] = (m[i] >>> shift) | (next << (32 - shift));
+		}
+		return res;
+	}
+
+	/**
+	 * Copy the least significant limbs of a magnitude
+	 * @param n number of limbs to keep
+	 * @return trimmed copy of the lower n limbs of m
+	 */
+	private static int[] lowerLimbs(int[] m, int n) {
+		int len = Math.min(n, m.length);
+		int[] res = new int[len];
+		System.arraycopy(m, 0, res, 0, len);
+		return trim(res);
+	}
+
+	/**
+	 * Copy the limbs of a magnitude above a given position
+	 * @param n number of low limbs to drop
+	 * @return m shifted right by n limbs
+	 */
+	private static int[] upperLimbs(int[] m, int n) {
+		if (n >= m.length) {
+			return new int[0];
+		}
+		int[] res = new int[m.length - n];
+		System.arraycopy(m, n, res, 0, res.length);
+		return res;
+	}
+
+	/**
+	 * Add src, shifted left by a whole number of limbs, into acc in place.
+	 * The caller guarantees the sum fits in acc.
+	 * @param shift number of limbs to shift src by
+	 */
+	private static void addShifted(int[] acc, int[] src, int shift) {
+		long carry = 0;
+		int i = 0;
+		for (; i < src.length; i++) {
+			carry += (acc[i + shift] & LONG_MASK) + (src[i] & LONG_MASK);
+			acc[i + shift] = (int) carry;
+			carry >>>= 32;
+		}
+		for (i += shift; carry != 0 && i < acc.length; i++) {
+			carry += (acc[i] & LONG_MASK);
+			acc[i] = (int) carry;
+			carry >>>= 32;
+		}
+	}
+
+	/**
+	 * Subtract src from acc in place, requires acc >= src
+	 */
+	private static void subtractFrom(int[] acc, int[] src) {
+		long borrow = 0;
+		int i = 0;
+		for (; i < src.length; i++) {
+			borrow = (acc[i] & LONG_MASK) - (src[i] & LONG_MASK) + borrow;
+			acc[i] = (int) borrow;
+			borrow >>= 32;
+		}
+		for (; borrow != 0 && i < acc.length; i++) {
+			borrow = (acc[i] & LONG_MASK) + borrow;
+			acc[i] = (int) borrow;
+			borrow >>= 32;
+		}
+	}
+
+	/**
+	 * Return CHUNK_RADIX[radix]^(2^i), squaring up from the largest cached
+	 * power as needed
+	 */
+	private static synchronized HeftyInteger radixPower(int radix, int i) {
+		HeftyInteger[] cache = radixPowers[radix];
+		if (cache == null || cache.length <= i) {
+			HeftyInteger[] grown = new HeftyInteger[i + 1];
+			int have = 1;
+			if (cache == null) {
+				grown[0] = new HeftyInteger(1, new int[] {CHUNK_RADIX[radix]});
+			}
+			else {
+				System.arraycopy(cache, 0, grown, 0, cache.length);
+				have = cache.length;
+			}
+			for (int j = have; j <= i; j++) {
+				grown[j] = grown[j - 1].square();
+			}
+			radixPowers[radix] = grown;
+			cache = grown;
+		}
+		return cache[i];
+	}
+
+	/**
+	 * Parse the digits s[start, end) into a magnitude. The low part takes
+	 * the largest power of two number of chunks that leaves some digits for
+	 * the high part, so its scale is a cached power.
+	 */
+	private static int[] parseMag(CharSequence s, int start, int end, int radix) {
+		int k = DIGITS_PER_CHUNK[radix];
+		int chunks = (end - start + k - 1) / k;
+		if (chunks <= Math.max(RADIX_CONVERSION_THRESHOLD, 1)) {
+			return parseChunks(s, start, end, radix);
+		}
+
+		int i = 31 - Integer.numberOfLeadingZeros(chunks - 1);
+		int split = end - (k << i);
+		HeftyInteger high = new HeftyInteger(1, parseMag(s, start, split, radix));
+		HeftyInteger low = new HeftyInteger(1, parseMag(s, split, end, radix));
+		return high.multiply(radixPower(radix, i)).add(low).mag;
+	}
+
+	/**
+	 * Parse the digits s[start, end) one chunk at a time, multiplying the
+	 * limbs so far by CHUNK_RADIX in place
+	 */
+	private static int[] parseChunks(CharSequence s, int start, int end, int radix) {
+		int k = DIGITS_PER_CHUNK[radix];
+		long chunkRadix = CHUNK_RADIX[radix];
+
+		//each chunk is below 2^31, so never needs more than a limb
+		int[] m = new int[(end - start + k - 1) / k];
+		int used = 0;
+		int first = (end - start) % k;
+		for (int pos = start, next = start + ((first == 0) ? k : first); pos < end; pos = next, next += k) {
+			long carry = parseChunk(s, pos, next, radix);
+			for (int j = 0; j < used; j++) {
+				carry += (m[j] & LONG_MASK) * chunkRadix;
+				m[j] = (int) carry;
+				carry >>>= 32;
+			}
+			if (carry != 0) {
+				m[used++] = (int) carry;
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Parse at most DIGITS_PER_CHUNK[radix] digits into an int
+	 */
+	private static int parseChunk(CharSequence s, int start, int end, int radix) {
+		int res = 0;
+		for (int i = start; i < end; i++) {
+			int d = Character.digit(s.charAt(i), radix);
+			if (d < 0) {
+				throw new NumberFormatException("Illegal digit '" + s.charAt(i) + "' at index " + i);
+			}
+			res = res * radix + d;
+		}
+		return res;
+	}
+
+	/**
+	 * Append the digits of the magnitude m to sb, padded with leading zeros
+	 * to at least digits characters. Large magnitudes are divided by the
+	 * cached power of the radix nearest the square root of m.
+	 */
+	private static void toStringMag(int[] m, int radix, StringBuilder sb, int digits) {
+		if (m.length <= Math.max(RADIX_CONVERSION_THRESHOLD, 1)) {
+			chunksToString(m, radix, sb, digits);
+			return;
+		}
+
+		double chunkBits = Math.log(CHUNK_RADIX[radix]) / Math.log(2);
+		int i = Math.max(0, 31 - Integer.numberOfLeadingZeros((int) (magBitLength(m) / (2 * chunkBits))));
+		int lowDigits = DIGITS_PER_CHUNK[radix] << i;
+		int[][] qr = divideMag(m, radixPower(radix, i).mag);
+		toStringMag(trim(qr[0]), radix, sb, digits - lowDigits);
+		toStringMag(trim(qr[1]), radix, sb, lowDigits);
+	}
+
+	/**
+	 * Append the digits of the magnitude m to sb by peeling off one chunk
+	 * at a time with single limb division, padding as in toStringMag
+	 */
+	private static void chunksToString(int[] m, int radix, StringBuilder sb, int digits) {
+		int k = DIGITS_PER_CHUNK[radix];
+		long chunkRadix = CHUNK_RADIX[radix];
+
+		//each chunk holds at least 30 bits, so this is always enough
+		int[] chunks = new int[2 * m.length + 1];
+		int count = 0;
+		int[] q = m.clone();
+		int len = q.length;
+		while (len > 0) {
+			long rem = 0;
+			for (int j = len - 1; j >= 0; j--) {
+				long cur = (rem << 32) | (q[j] & LONG_MASK);
+				q[j] = (int) (cur / chunkRadix);
+				rem = cur % chunkRadix;
+			}
+			chunks[count++] = (int) rem;
+			while (len > 0 && q[len - 1] == 0) {
+				len--;
+			}
+		}
+
+		String top = (count == 0) ? "" : Integer.toString(chunks[count - 1], radix);
+		for (int pad = digits - top.length() - k * Math.max(count - 1, 0); pad > 0; pad--) {
+			sb.append('0');
+		}
+		sb.append(top);
+		for (int j = count - 2; j >= 0; j--) {
+			String c = Integer.toString(chunks[j], radix);
+			for (int pad = k - c.length(); pad > 0; pad--) {
+				sb.append('0');
+			}
+			sb.append(c);
+		}
+	}
+
+	/**
+	 * List the primes below limit with a sieve of Eratosthenes
+	 */
+	private static int[] sieveSmallPrimes(int limit) {
+		boolean[] composite = new boolean[limit];
+		int count = 0;
+		for (int i = 2; i < limit; i++) {
+			if (!composite[i]) {
+				count++;
+				for (long j = (long) i * i; j < limit; j += i) {
+					composite[(int) j] = true;
+				}
+			}
+		}
+		int[] primes = new int[count];
+		for (int i = 2, k = 0; i < limit; i++) {
+			if (!composite[i]) {
+				primes[k++] = i;
+			}
+		}
+		return primes;
+	}
+
+	/**
+	 * Find the remainders of the magnitude m by the first count small
+	 * primes, with one pass over m for each group of primes whose product
+	 * fits in an int
+	 */
+	private static int[] smallPrimeRemainders(int[] m, int count) {
+		int[] res = new int[count];
+		int i = 0;
+		while (i < count) {
+			long prod = SMALL_PRIMES[i];
+			int j = i + 1;
+			while (j < count && prod * SMALL_PRIMES[j] <= Integer.MAX_VALUE) {
+				prod *= SMALL_PRIMES[j++];
+			}
+			int r = smallRemainder(m, (int) prod);
+			for (; i < j; i++) {
+				res[i] = r % SMALL_PRIMES[i];
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Mark which of the odd numbers start, start + 2, ..., start + 2(n - 1)
+	 * have an odd small prime factor. start must be odd and larger than
+	 * every small prime.
+	 */
+	private static boolean[] sieveWindow(int[] start, int n) {
+		boolean[] composite = new boolean[n];
+		int[] rems = smallPrimeRemainders(start, SMALL_PRIMES.length);
+		for (int k = 1; k < SMALL_PRIMES.length; k++) {
+			long p = SMALL_PRIMES[k];
+
+			//first i with start + 2i divisible by p: i = -r / 2 mod p
+			long i = (p - rems[k]) % p * ((p + 1) / 2) % p;
+			for (; i < n; i += p) {
+				composite[(int) i] = true;
+			}
+		}
+		return composite;
+	}
+
+	/**
+	 * Run the probabilistic tests on an odd n with no small factors:
+	 * Miller-Rabin rounds, then a Lucas test from 100 bits up
+	 */
+	private static boolean passesPrimalityTests(HeftyInteger n, int certainty, Random rnd) {
+		int bits = n.bitLength();
+		int cap = (bits < 100) ? 50 : (bits < 256) ? 27 : (bits < 512) ? 15
+				: (bits < 768) ? 8 : (bits < 1024) ? 4 : 2;
+		int rounds = Math.min((certainty + 1) / 2, cap);
+
+		MontgomeryContext ctx = new MontgomeryContext(n);
+		HeftyInteger two = valueOf(2);
+		HeftyInteger nMinusTwo = n.subtract(two);
+		for (int i = 0; i < rounds; i++) {
+			//random base in [2, n - 2]
+			HeftyInteger base;
+			do {
+				base = new HeftyInteger(1, randomBits(bits, rnd));
+			} while (base.compareTo(two) < 0 || base.compareTo(nMinusTwo) > 0);
+			if (!ctx.isStrongProbablePrime(base)) {
+				return false;
+			}
+		}
+		return bits < 100 || passesLucas(n);
+	}
+
+	/**
+	 * Lucas probable prime test with Selfridge's parameters: the first D of
+	 * 5, -7, 9, -11, ... with Jacobi symbol (D/n) = -1, P = 1 and
+	 * Q = (1 - D)/4, then check that U(n + 1) is divisible by n
+	 */
+	private static boolean passesLucas(HeftyInteger n) {
+		int d = 5;
+		for (int tries = 0; ; tries++) {
+			int j = jacobiSymbol(d, n);
+			if (j == -1) {
+				break;
+			}
+			if (j == 0) {
+				//d shares a factor with n, which is bigger than d
+				return false;
+			}
+			//a square never finds a D, so check for one once the search has
+			// gone on for a while
+			if (tries == 20 && n.sqrtAndRemainder()[1].signum == 0) {
+				return false;
+			}
+			d = (d > 0) ? -(d + 2) : -d + 2;
+		}
+
+		//U(k) and V(k) by doubling and incrementing along the bits of n + 1,
+		// halving mod n by adding n to odd values
+		BarrettReducer reducer = new BarrettReducer(n);
+		HeftyInteger k = n.add(1);
+		HeftyInteger u = ONE, v = ONE;
+		for (int i = k.bitLength() - 2; i >= 0; i--) {
+			HeftyInteger u2 = reducer.multiply(u, v);
+			HeftyInteger v2 = reducer.reduce(v.square().add(u.square().multiply(d)));
+			u = u2;
+			v = halveMod(v2, n);
+			if (k.testBit(i)) {
+				u2 = halveMod(reducer.reduce(u.add(v)), n);
+				v2 = halveMod(reducer.reduce(v.add(u.multiply(d))), n);
+				u = u2;
+				v = v2;
+			}
+		}
+		return u.signum == 0;
+	}
+
+	/**
+	 * Compute x / 2 mod n for x in [0, n) and odd n
+	 */
+	private static HeftyInteger halveMod(HeftyInteger x, HeftyInteger n) {
+		if (x.testBit(0)) {
+			x = x.add(n);
+		}
+		return x.shiftRight(1);
+	}
+
+	/**
+	 * Compute the Jacobi symbol (p/n) for an odd positive n by quadratic
+	 * reciprocity, reducing n modulo |p| once and then working in ints
+	 */
+	private static int jacobiSymbol(int p, HeftyInteger n) {
+		if (p == 0) {
+			return 0;
+		}
+		int j = 1;
+		int u = n.mag[0];
+
+		//(-1/n) is -1 when n = 3 mod 4
+		if (p < 0) {
+			p = -p;
+			if ((u & 3) == 3) {
+				j = -j;
+			}
+		}
+
+		//(2/n) is -1 when n = 3 or 5 mod 8
+		while ((p & 3) == 0) {
+			p >>= 2;
+		}
+		if ((p & 1) == 0) {
+			p >>= 1;
+			if (((u ^ (u >> 1)) & 2) != 0) {
+				j = -j;
+			}
+		}
+		if (p == 1) {
+			return j;
+		}
+
+		//reciprocity flips the sign when both are 3 mod 4
+		if ((p & u & 2) != 0) {
+			j = -j;
+		}
+		u = smallRemainder(n.mag, p);
+		while (u != 0) {
+			while ((u & 3) == 0) {
+				u >>= 2;
+			}
+			if ((u & 1) == 0) {
+				u >>= 1;
+				if (((p ^ (p >> 1)) & 2) != 0) {
+					j = -j;
+				}
+			}
+			if (u == 1) {
+				return j;
+			}
+			if ((u & p & 2) != 0) {
+				j = -j;
+			}
+			int t = u;
+			u = p % t;
+			p = t;
+		}
+		return 0;
+	}
+
+	/**
+	 * Compute the remainder of the magnitude m by a positive int
+	 */
+	private static int smallRemainder(int[] m, int d) {
+		long r = 0;
+		for (int k = m.length - 1; k >= 0; k--) {
+			r = ((r << 32) | (m[k] & LONG_MASK)) % d;
+		}
+		return (int) r;
+	}
+
+	/**
+	 * Fill a magnitude with bits uniformly random bits
+	 * @return untrimmed limbs
+	 */
+	private static int[] randomBits(int bits, Random rnd) {
+		int[] m = new int[(bits + 31) >>> 5];
+		for (int i = 0; i < m.length; i++) {
+			m[i] = rnd.nextInt();
+		}
+		if ((bits & 31) != 0) {
+			m[m.length - 1] &= (1 << (bits & 31)) - 1;
+		}
+		return m;
+	}
+
+	/**
+	 * Compute the square root and remainder of a non-negative x from the
+	 * root of its top half, with one Newton step to double the precision
+	 * @return {floor(sqrt(x)), x - floor(sqrt(x))^2}
+	 */
+	private static HeftyInteger[] sqrtRem(HeftyInteger x) {
+		int bits = x.bitLength();
+		if (bits <= 62) {
+			long v = (bits == 0) ? 0 : x.mag[0] & LONG_MASK;
+			if (x.mag.length > 1) {
+				v |= (long) x.mag[1] << 32;
+			}
+			long s = (long) Math.sqrt((double) v);
+			while (s * s > v) {
+				s--;
+			}
+			while ((s + 1) * (s + 1) <= v) {
+				s++;
+			}
+			return new HeftyInteger[] {valueOf(s), valueOf(v - s * s)};
+		}
+
+		//y = sqrt(x / 4^k) holds the top half of the bits of the root, so
+		// one Newton step from y * 2^k lands on the root or one above it
+		int k = (bits - 1) / 4;
+		HeftyInteger y = sqrtRem(x.shiftRight(2 * k))[0].shiftLeft(k);
+		HeftyInteger s = y.add(x.divide(y)).shiftRight(1);
+		HeftyInteger r = x.subtract(s.square());
+		while (r.signum < 0) {
+			s = s.add(-1);
+			r = r.add(s.shiftLeft(1)).add(1);
+		}
+		return new HeftyInteger[] {s, r};
+	}
+
+	/**
+	 * Compute floor(x^(1/n)) for positive x and n >= 3
+	 */
+	private static HeftyInteger rootOf(HeftyInteger x, int n) {
+		int bits = x.bitLength();
+
+		//start at or above the root: 2^ceil(bits / n) when the root is only
+		// a few bits, otherwise one more than the root of the top bits,
+		// scaled back up
+		int k = (bits / n) / 2;
+		HeftyInteger y = (k < 32)
+				? ONE.shiftLeft((bits + n - 1) / n)
+				: rootOf(x.shiftRight(n * k), n).add(1).shiftLeft(k);
+
+		//from above, Newton's steps decrease until they reach the root
+		HeftyInteger degree = valueOf(n);
+		while (true) {
+			HeftyInteger next = y.multiply(n - 1).add(x.divide(y.pow(n - 1))).divide(degree);
+			if (next.compareTo(y) >= 0) {
+				return y;
+			}
+			y = next;
+		}
+	}
+
+	/**
+	 * Compute the product of primes[i]^exps[i]. The power of two is a
+	 * shift; the odd primes are combined as the product over bits j of
+	 * (the primes whose exponent has bit j set)^(2^j), evaluated from the
+	 * top bit down by squaring, with each set of primes multiplied in a
+	 * product tree.
+	 * @param primes increasing primes starting at 2
+	 */
+	private static HeftyInteger primePowerProduct(int[] primes, int[] exps) {
+		int max = 0;
+		for (int i = 1; i < primes.length; i++) {
+			max = Math.max(max, exps[i]);
+		}
+		HeftyInteger res = ONE;
+		int[] factors = new int[primes.length];
+		for (int bit = Integer.highestOneBit(max); bit != 0; bit >>>= 1) {
+			int count = 0;
+			for (int i = 1; i < primes.length; i++) {
+				if ((exps[i] & bit) != 0) {
+					factors[count++] = primes[i];
+				}
+			}
+			res = res.square().multiply(productOfFactors(factors, count));
+		}
+		return res.shiftLeft(exps[0]);
+	}
+
+	/**
+	 * Multiply count positive ints. Consecutive factors are packed into
+	 * single limbs while their product fits, and the limbs are multiplied
+	 * in a balanced product tree.
+	 */
+	private static HeftyInteger productOfFactors(int[] factors, int count) {
+		if (count == 0) {
+			return ONE;
+		}
+		List<HeftyInteger> limbs = new ArrayList<>();
+		long acc = 1;
+		for (int i = 0; i < count; i++) {
+			long f = factors[i] & LONG_MASK;
+			if (acc * f > LONG_MASK) {
+				limbs.add(valueOf(acc));
+				acc = 1;
 			}
+			acc *= f;
 		}
-		
-		return new HeftyInteger[]{larger, s, t};
+		limbs.add(valueOf(acc));
+		HeftyInteger[][] tree = productTree(limbs.toArray(new HeftyInteger[0]));
+		return tree[tree.length - 1][0];
 	}
-}
\ No newline at end of file
+}
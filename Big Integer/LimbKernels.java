@@ -0,0 +1,18 @@
+/**
+ * Replacement for HeftyInteger's innermost limb loop, loaded at startup
+ * when an accelerated implementation is present (see
+ * vector/VectorLimbKernels.java). Without one, HeftyInteger uses its own
+ * scalar loops.
+ */
+interface LimbKernels {
+
+	/**
+	 * Write the product x * y into z, the same contract as
+	 * HeftyInteger.schoolbookMultiply
+	 * @param xlen number of limbs of x to use
+	 * @param ylen number of limbs of y to use
+	 * @param z receives x * y in its low xlen + ylen limbs, which must all
+	 * be zero
+	 */
+	void multiply(int[] x, int xlen, int[] y, int ylen, int[] z);
+}
@@ -0,0 +1,296 @@
+import java.util.Arrays;
+
+/**
+ * Precomputed state for Montgomery multiplication modulo a fixed odd
+ * modulus n. Values are kept in Montgomery form x*R mod n, with
+ * R = 2^(32k) for a k-limb modulus, so a modular product needs no division:
+ * each REDC step only multiplies by the modulus and shifts out a limb.
+ *
+ * Building a context costs one division (for R^2 mod n), so it pays off
+ * when many products are taken modulo the same n, as in modPow.
+ */
+public class MontgomeryContext {
+
+	//exponent bit lengths above which modPow uses the next larger window, as
+	// in BigInteger: 1 bit up to 7 bits of exponent, 7 bits above 1793
+	private static final int[] WINDOW_THRESHOLDS = {7, 25, 81, 241, 673, 1793};
+
+	private final HeftyInteger modulus;
+
+	//modulus limbs, little-endian, exactly k of them
+	private final int[] n;
+
+	//-n^-1 mod 2^32
+	private final int nInv;
+
+	//R^2 mod n, used to bring values into Montgomery form
+	private final int[] r2;
+
+	/**
+	 * Build a context for an odd modulus
+	 * @param modulus the modulus, must be odd and greater than 1
+	 */
+	public MontgomeryContext(HeftyInteger modulus) {
+		if (modulus.signum <= 0 || (modulus.mag[0] & 1) == 0) {
+			throw new ArithmeticException("Montgomery modulus must be odd and positive");
+		}
+		this.modulus = modulus;
+		n = modulus.mag;
+
+		//Newton iteration for the inverse of n[0] modulo 2^32; each step
+		// doubles the number of correct low bits
+		int inv = n[0];
+		for (int i = 0; i < 5; i++) {
+			inv *= 2 - n[0] * inv;
+		}
+		nInv = -inv;
+
+		int[] r2Limbs = new int[2 * n.length + 1];
+		r2Limbs[2 * n.length] = 1;
+		r2 = toLimbs(new HeftyInteger(1, r2Limbs).mod(modulus));
+	}
+
+	/**
+	 * Return the modulus this context reduces by
+	 * @return the modulus
+	 */
+	public HeftyInteger getModulus() {
+		return modulus;
+	}
+
+	/**
+	 * Compute a * b mod n
+	 * @return the product, in the range [0, n)
+	 */
+	public HeftyInteger multiply(HeftyInteger a, HeftyInteger b) {
+		int[] scratch = new int[n.length + 2];
+		int[] am = toMontgomery(a, scratch), bm = toMontgomery(b, scratch);
+		int[] prod = new int[n.length];
+		montMultiply(am, bm, prod, scratch);
+		return fromMontgomery(prod, scratch);
+	}
+
+	/**
+	 * Compute base^exponent mod n using a left-to-right sliding window over
+	 * the exponent bits, so only one multiplication is needed per window of
+	 * up to 7 bits on top of the squarings
+	 * @param exponent a non-negative exponent
+	 * @return base^exponent mod n, in the range [0, n)
+	 */
+	public HeftyInteger modPow(HeftyInteger base, HeftyInteger exponent) {
+		if (exponent.signum < 0) {
+			throw new ArithmeticException("Negative exponent");
+		}
+		int[] scratch = new int[n.length + 2];
+		int[] acc = montPow(toMontgomery(base, scratch), exponent.mag, scratch);
+		if (acc == null) {
+			//exponent is zero
+			return HeftyInteger.ONE.mod(modulus);
+		}
+		return fromMontgomery(acc, scratch);
+	}
+
+	/**
+	 * Run one Miller-Rabin round on the modulus, staying in Montgomery form
+	 * from the first power to the last squaring
+	 * @param base the witness to try, in the range [2, n - 2]
+	 * @return false if base proves the modulus composite, true if the
+	 * modulus is a strong probable prime to base
+	 */
+	boolean isStrongProbablePrime(HeftyInteger base) {
+		//n - 1 = d * 2^s with d odd
+		HeftyInteger nMinusOne = modulus.add(-1);
+		int s = 0;
+		while (!nMinusOne.testBit(s)) {
+			s++;
+		}
+		HeftyInteger d = nMinusOne.shiftRight(s);
+
+		int[] scratch = new int[n.length + 2];
+		int[] one = toMontgomery(HeftyInteger.ONE, scratch);
+		int[] minusOne = toMontgomery(nMinusOne, scratch);
+		int[] y = montPow(toMontgomery(base, scratch), d.mag, scratch);
+		if (Arrays.equals(y, one) || Arrays.equals(y, minusOne)) {
+			return true;
+		}
+		int[] tmp = new int[n.length];
+		for (int i = 1; i < s; i++) {
+			montMultiply(y, y, tmp, scratch);
+			int[] t = y;
+			y = tmp;
+			tmp = t;
+			if (Arrays.equals(y, minusOne)) {
+				return true;
+			}
+			if (Arrays.equals(y, one)) {
+				//a nontrivial square root of 1
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Raise a value in Montgomery form to a power using a left-to-right
+	 * sliding window over the exponent bits
+	 * @param base k limbs in Montgomery form
+	 * @param e exponent magnitude
+	 * @param scratch at least k + 2 limbs of work space
+	 * @return base^e in Montgomery form, or null if e is zero
+	 */
+	private int[] montPow(int[] base, int[] e, int[] scratch) {
+		int k = n.length;
+		int bits = HeftyInteger.magBitLength(e);
+
+		int w = 1;
+		while (w <= WINDOW_THRESHOLDS.length && bits > WINDOW_THRESHOLDS[w - 1]) {
+			w++;
+		}
+
+		//odd powers base^1, base^3, ..., base^(2^w - 1) in Montgomery form
+		int[][] table = new int[1 << (w - 1)][];
+		table[0] = base;
+		if (table.length > 1) {
+			int[] sq = new int[k];
+			montMultiply(table[0], table[0], sq, scratch);
+			for (int i = 1; i < table.length; i++) {
+				table[i] = new int[k];
+				montMultiply(table[i - 1], sq, table[i], scratch);
+			}
+		}
+
+		//acc and tmp swap roles so the loop allocates nothing
+		int[] acc = null, tmp = new int[k];
+		int i = bits - 1;
+		while (i >= 0) {
+			if (!testBit(e, i)) {
+				montMultiply(acc, acc, tmp, scratch);
+				int[] t = acc;
+				acc = tmp;
+				tmp = t;
+				i--;
+				continue;
+			}
+
+			//longest window of at most w bits starting at bit i and ending
+			// on a set bit
+			int j = Math.max(i - w + 1, 0);
+			while (!testBit(e, j)) {
+				j++;
+			}
+			int window = 0;
+			for (int b = i; b >= j; b--) {
+				window = (window << 1) | (testBit(e, b) ? 1 : 0);
+			}
+
+			if (acc == null) {
+				acc = table[window >>> 1].clone();
+			}
+			else {
+				for (int b = i; b >= j; b--) {
+					montMultiply(acc, acc, tmp, scratch);
+					int[] t = acc;
+					acc = tmp;
+					tmp = t;
+				}
+				montMultiply(acc, table[window >>> 1], tmp, scratch);
+				int[] t = acc;
+				acc = tmp;
+				tmp = t;
+			}
+			i = j - 1;
+		}
+
+		return acc;
+	}
+
+	/**
+	 * Convert a value to Montgomery form, x*R mod n
+	 * @return k limbs
+	 */
+	int[] toMontgomery(HeftyInteger x, int[] scratch) {
+		int[] res = new int[n.length];
+		montMultiply(toLimbs(x.mod(modulus)), r2, res, scratch);
+		return res;
+	}
+
+	/**
+	 * Convert a value out of Montgomery form, x*R^-1 mod n
+	 */
+	HeftyInteger fromMontgomery(int[] x, int[] scratch) {
+		int[] one = new int[n.length];
+		one[0] = 1;
+		int[] res = new int[n.length];
+		montMultiply(x, one, res, scratch);
+		return new HeftyInteger(1, res);
+	}
+
+	/**
+	 * Montgomery product a*b*R^-1 mod n by coarsely integrated operand
+	 * scanning: alternate one row of the product with one limb of reduction
+	 * so the running value never exceeds k + 2 limbs
+	 * @param a k limbs below n
+	 * @param b k limbs below n
+	 * @param out receives k limbs below n, may not alias a or b
+	 * @param scratch at least k + 2 limbs of work space
+	 */
+	void montMultiply(int[] a, int[] b, int[] out, int[] scratch) {
+		int k = n.length;
+		int[] t = scratch;
+		for (int i = 0; i < k + 2; i++) {
+			t[i] = 0;
+		}
+
+		for (int i = 0; i < k; i++) {
+			//t += a * b[i]
+			long bi = b[i] & HeftyInteger.LONG_MASK;
+			long carry = 0;
+			for (int j = 0; j < k; j++) {
+				carry += (a[j] & HeftyInteger.LONG_MASK) * bi + (t[j] & HeftyInteger.LONG_MASK);
+				t[j] = (int) carry;
+				carry >>>= 32;
+			}
+			carry += t[k] & HeftyInteger.LONG_MASK;
+			t[k] = (int) carry;
+			t[k + 1] = (int) (carry >>> 32);
+
+			//t = (t + m*n) / 2^32, with m chosen to clear the low limb
+			long m = (t[0] * nInv) & HeftyInteger.LONG_MASK;
+			carry = ((t[0] & HeftyInteger.LONG_MASK) + m * (n[0] & HeftyInteger.LONG_MASK)) >>> 32;
+			for (int j = 1; j < k; j++) {
+				carry += (t[j] & HeftyInteger.LONG_MASK) + m * (n[j] & HeftyInteger.LONG_MASK);
+				t[j - 1] = (int) carry;
+				carry >>>= 32;
+			}
+			carry += t[k] & HeftyInteger.LONG_MASK;
+			t[k - 1] = (int) carry;
+			t[k] = t[k + 1] + (int) (carry >>> 32);
+		}
+
+		//the result is below 2n, so at most one subtraction is needed
+		if (t[k] != 0 || HeftyInteger.compareMag(t, k, n, k) >= 0) {
+			long borrow = 0;
+			for (int j = 0; j < k; j++) {
+				borrow += (t[j] & HeftyInteger.LONG_MASK) - (n[j] & HeftyInteger.LONG_MASK);
+				out[j] = (int) borrow;
+				borrow >>= 32;
+			}
+		}
+		else {
+			System.arraycopy(t, 0, out, 0, k);
+		}
+	}
+
+	/**
+	 * Copy a value below n into exactly k limbs
+	 */
+	private int[] toLimbs(HeftyInteger x) {
+		int[] res = new int[n.length];
+		System.arraycopy(x.mag, 0, res, 0, x.mag.length);
+		return res;
+	}
+
+	private static boolean testBit(int[] m, int i) {
+		return (m[i >>> 5] & (1 << (i & 31))) != 0;
+	}
+}
@@ -0,0 +1,66 @@
+import java.util.Random;
+
+// NOTE: BigInteger is used only as a reference point for the timings
+import java.math.BigInteger;
+
+/**
+ * Times HeftyInteger.multiply against java.math.BigInteger over a range of
+ * operand sizes, once for each multiplication tier, so the tier thresholds
+ * in HeftyInteger can be calibrated for the machine at hand.
+ *
+ * Usage: java MultiplyBenchmark [maxLimbs]
+ *
+ * Add --add-modules jdk.incubator.vector to time the grade school tier with
+ * the SIMD kernels from vector/VectorLimbKernels.java.
+ */
+public class MultiplyBenchmark {
+    private static final int REPS = 20;
+
+    public static void main(String[] args) {
+        int maxLimbs = (args.length >= 1) ? Integer.parseInt(args[0]) : 1024;
+        Random rnd = new Random(1501);
+
+        int karatsuba = HeftyInteger.KARATSUBA_THRESHOLD;
+        int toom = HeftyInteger.TOOM3_THRESHOLD;
+        int ntt = HeftyInteger.NTT_THRESHOLD;
+
+        System.out.println("vector kernels: " + (HeftyInteger.vectorKernelsEnabled() ? "on" : "off"));
+        System.out.println("limbs\tschool(ms)\tkarat(ms)\ttoom3(ms)\tntt(ms)\t\tBigInteger(ms)");
+        for (int limbs = 16; limbs <= maxLimbs; limbs *= 2) {
+            BigInteger x = new BigInteger(32 * limbs - 1, rnd);
+            BigInteger y = new BigInteger(32 * limbs - 1, rnd);
+            HeftyInteger hx = new HeftyInteger(x.toByteArray());
+            HeftyInteger hy = new HeftyInteger(y.toByteArray());
+
+            // force a single tier for the top level of each run
+            HeftyInteger.KARATSUBA_THRESHOLD = Integer.MAX_VALUE;
+            double school = time(hx, hy);
+            HeftyInteger.KARATSUBA_THRESHOLD = Math.min(karatsuba, limbs);
+            HeftyInteger.TOOM3_THRESHOLD = Integer.MAX_VALUE;
+            double karat = time(hx, hy);
+            HeftyInteger.TOOM3_THRESHOLD = Math.min(toom, limbs);
+            HeftyInteger.NTT_THRESHOLD = Integer.MAX_VALUE;
+            double toom3 = time(hx, hy);
+            HeftyInteger.NTT_THRESHOLD = Math.min(ntt, limbs);
+            double transform = time(hx, hy);
+            HeftyInteger.KARATSUBA_THRESHOLD = karatsuba;
+            HeftyInteger.TOOM3_THRESHOLD = toom;
+            HeftyInteger.NTT_THRESHOLD = ntt;
+
+            for (int i = 0; i < REPS; i++) x.multiply(y);
+            long start = System.nanoTime();
+            for (int i = 0; i < REPS; i++) x.multiply(y);
+            double big = (System.nanoTime() - start) / (REPS * 1e6);
+
+            System.out.printf("%d\t%.4f\t\t%.4f\t\t%.4f\t\t%.4f\t\t%.4f%n",
+                    limbs, school, karat, toom3, transform, big);
+        }
+    }
+
+    private static double time(HeftyInteger x, HeftyInteger y) {
+        for (int i = 0; i < REPS; i++) x.multiply(y);
+        long start = System.nanoTime();
+        for (int i = 0; i < REPS; i++) x.multiply(y);
+        return (System.nanoTime() - start) / (REPS * 1e6);
+    }
+}
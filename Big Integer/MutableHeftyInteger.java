@@ -0,0 +1,214 @@
+/**
+ * A mutable, growable counterpart to HeftyInteger for accumulating sums
+ * and products in hot loops. Every operation works in place on a limb
+ * buffer that only grows when a result no longer fits, so a loop that
+ * repeatedly adds into one accumulator allocates nothing once the buffer
+ * has reached its final size. Convert with toHeftyInteger() at the end.
+ *
+ * Instances are not thread-safe.
+ */
+public class MutableHeftyInteger {
+
+	//-1, 0 or 1
+	private int signum;
+
+	//magnitude as little-endian limbs; only the first len are in use and
+	// value[len - 1] is nonzero unless len is 0
+	private int[] value;
+	private int len;
+
+	//reusable space for products in multiplyAccumulate
+	private int[] scratch = new int[0];
+
+	/**
+	 * Construct a MutableHeftyInteger holding zero
+	 */
+	public MutableHeftyInteger() {
+		value = new int[4];
+	}
+
+	/**
+	 * Construct a MutableHeftyInteger holding the value of x
+	 * @param x the initial value
+	 */
+	public MutableHeftyInteger(HeftyInteger x) {
+		value = new int[Math.max(4, x.mag.length + 1)];
+		set(x);
+	}
+
+	/**
+	 * Replace the value of this with x, reusing the buffer if it is big
+	 * enough
+	 * @param x the new value
+	 */
+	public void set(HeftyInteger x) {
+		ensureCapacity(x.mag.length);
+		System.arraycopy(x.mag, 0, value, 0, x.mag.length);
+		clearFrom(x.mag.length);
+		len = x.mag.length;
+		signum = x.signum;
+	}
+
+	/**
+	 * Reset this to zero without releasing its buffer
+	 */
+	public void setZero() {
+		clearFrom(0);
+		len = 0;
+		signum = 0;
+	}
+
+	/**
+	 * Return the sign of this
+	 * @return -1, 0 or 1
+	 */
+	public int signum() {
+		return signum;
+	}
+
+	/**
+	 * Add x into this in place
+	 * @param x the HeftyInteger to add
+	 */
+	public void addInto(HeftyInteger x) {
+		addMagnitude(x.mag, x.mag.length, x.signum);
+	}
+
+	/**
+	 * Subtract x from this in place
+	 * @param x the HeftyInteger to subtract
+	 */
+	public void subtractInto(HeftyInteger x) {
+		addMagnitude(x.mag, x.mag.length, -x.signum);
+	}
+
+	/**
+	 * Add the product a*b into this in place. Small products are formed in
+	 * a scratch buffer kept by this accumulator, so they allocate nothing
+	 * once it is large enough; large ones go through HeftyInteger.multiply
+	 * to use its faster tiers.
+	 * @param a the first factor
+	 * @param b the second factor
+	 */
+	public void multiplyAccumulate(HeftyInteger a, HeftyInteger b) {
+		int sign = a.signum * b.signum;
+		if (sign == 0) {
+			return;
+		}
+		int alen = a.mag.length, blen = b.mag.length;
+		if (Math.min(alen, blen) >= HeftyInteger.KARATSUBA_THRESHOLD) {
+			HeftyInteger p = a.multiply(b);
+			addMagnitude(p.mag, p.mag.length, p.signum);
+			return;
+		}
+
+		int plen = alen + blen;
+		if (scratch.length < plen) {
+			scratch = new int[Math.max(plen, 2 * scratch.length)];
+		}
+		for (int i = 0; i < plen; i++) {
+			scratch[i] = 0;
+		}
+		HeftyInteger.schoolbookMultiply(a.mag, alen, b.mag, blen, scratch);
+		if (scratch[plen - 1] == 0) {
+			plen--;
+		}
+		addMagnitude(scratch, plen, sign);
+	}
+
+	/**
+	 * Return an immutable copy of the current value
+	 * @return the value of this as a HeftyInteger
+	 */
+	public HeftyInteger toHeftyInteger() {
+		int[] mag = new int[len];
+		System.arraycopy(value, 0, mag, 0, len);
+		return new HeftyInteger(signum, mag);
+	}
+
+	/**
+	 * Add sign * y into this in place
+	 * @param ylen number of limbs of y in use, with y[ylen - 1] nonzero
+	 */
+	private void addMagnitude(int[] y, int ylen, int sign) {
+		if (sign == 0 || ylen == 0) {
+			return;
+		}
+		if (signum == 0 || signum == sign) {
+			//magnitudes add, possibly one limb longer
+			ensureCapacity(Math.max(len, ylen) + 1);
+			long carry = 0;
+			int i = 0;
+			for (; i < ylen; i++) {
+				carry += (value[i] & HeftyInteger.LONG_MASK) + (y[i] & HeftyInteger.LONG_MASK);
+				value[i] = (int) carry;
+				carry >>>= 32;
+			}
+			for (; carry != 0; i++) {
+				carry += value[i] & HeftyInteger.LONG_MASK;
+				value[i] = (int) carry;
+				carry >>>= 32;
+			}
+			len = Math.max(len, i);
+			signum = sign;
+			return;
+		}
+
+		int cmp = HeftyInteger.compareMag(value, len, y, ylen);
+		if (cmp == 0) {
+			setZero();
+			return;
+		}
+		ensureCapacity(ylen);
+		long borrow = 0;
+		if (cmp > 0) {
+			//|this| - |y|
+			int i = 0;
+			for (; i < ylen; i++) {
+				borrow += (value[i] & HeftyInteger.LONG_MASK) - (y[i] & HeftyInteger.LONG_MASK);
+				value[i] = (int) borrow;
+				borrow >>= 32;
+			}
+			for (; borrow != 0; i++) {
+				borrow += value[i] & HeftyInteger.LONG_MASK;
+				value[i] = (int) borrow;
+				borrow >>= 32;
+			}
+		}
+		else {
+			//|y| - |this|, and the sign follows y
+			for (int i = 0; i < ylen; i++) {
+				borrow += (y[i] & HeftyInteger.LONG_MASK) - (value[i] & HeftyInteger.LONG_MASK);
+				value[i] = (int) borrow;
+				borrow >>= 32;
+			}
+			len = ylen;
+			signum = sign;
+		}
+		while (len > 0 && value[len - 1] == 0) {
+			len--;
+		}
+	}
+
+	/**
+	 * Grow the buffer, at least doubling it, so it holds n limbs; the new
+	 * limbs are zero
+	 */
+	private void ensureCapacity(int n) {
+		if (value.length >= n) {
+			return;
+		}
+		int[] grown = new int[Math.max(n, 2 * value.length)];
+		System.arraycopy(value, 0, grown, 0, len);
+		value = grown;
+	}
+
+	/**
+	 * Zero the buffer from limb i up to the old length in use
+	 */
+	private void clearFrom(int i) {
+		for (; i < len; i++) {
+			value[i] = 0;
+		}
+	}
+}
@@ -0,0 +1,520 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable HeftyInteger whose limbs live outside the Java heap, in a
+ * direct buffer or a memory-mapped file, so very large values cost the
+ * garbage collector nothing to keep around.
+ *
+ * add, subtract and negate stream over the limbs without ever bringing them
+ * onto the heap. The other operations need random access to both operands,
+ * so they convert to HeftyInteger, compute there, and move the result back
+ * off-heap.
+ *
+ * spill writes the value to a file and returns a copy mapped from that
+ * file; load maps a spill file back in without reading it onto the heap.
+ * A spill file holds the sign and the limb count as little-endian ints,
+ * followed by the limbs, least significant first.
+ *
+ * Every value owns its memory until close is called. When the foreign
+ * memory backend is available (see foreign/ForeignOffHeapMemory.java),
+ * close frees it at once instead of whenever the garbage collector gets to
+ * the buffer; without it, close only marks the value closed and the buffer
+ * is freed like any other direct buffer. Values that share limbs, like a
+ * negation, keep them until the last one is closed. Arithmetic on open values is safe from several threads at
+ * once. A closed value throws IllegalStateException when used, and as
+ * with any manual release, close must not race with another thread still
+ * using that same value.
+ */
+public class OffHeapHeftyInteger implements Comparable<OffHeapHeftyInteger>, AutoCloseable {
+
+	//bytes ahead of the limbs in a spill file
+	private static final int HEADER_BYTES = 8;
+
+	//native memory that close can free, or null if the foreign memory
+	// backend did not load, in which case buffers come from java.nio and the
+	// garbage collector frees them
+	private static final OffHeapMemory MEMORY = loadForeignMemory();
+
+	//-1, 0 or 1
+	private final int signum;
+
+	//little-endian limbs, only ever read with absolute indexes; the first
+	// length are in use and mag.get(length - 1) is nonzero unless length is 0
+	private final IntBuffer mag;
+	private final int length;
+
+	//the memory behind mag, shared by every value that reads it
+	private final Block block;
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	/**
+	 * A direct or mapped buffer, the scope that frees it (null without the
+	 * foreign memory backend) and the number of open values using it.
+	 * Values are shared between threads, so the count is atomic, and once
+	 * it reaches zero it never goes back up.
+	 */
+	private static final class Block {
+		private volatile ByteBuffer root;
+		private final Object scope;
+		private final AtomicInteger owners = new AtomicInteger(1);
+
+		Block(ByteBuffer root, Object scope) {
+			this.root = root.order(ByteOrder.LITTLE_ENDIAN);
+			this.scope = scope;
+		}
+	}
+
+	private OffHeapHeftyInteger(int signum, IntBuffer mag, int length, Block block) {
+		while (length > 0 && mag.get(length - 1) == 0) {
+			length--;
+		}
+		this.signum = (length == 0) ? 0 : signum;
+		this.mag = mag;
+		this.length = length;
+		this.block = block;
+	}
+
+	/**
+	 * Copy a HeftyInteger into a new direct buffer
+	 * @param x the value to move off-heap
+	 * @return an OffHeapHeftyInteger equal to x
+	 */
+	public static OffHeapHeftyInteger of(HeftyInteger x) {
+		Block b = allocate(x.mag.length);
+		IntBuffer limbs = limbs(b);
+		limbs.put(0, x.mag);
+		return new OffHeapHeftyInteger(x.signum, limbs, x.mag.length, b);
+	}
+
+	/**
+	 * Map a file written by spill back into memory. The limbs are read
+	 * straight from the page cache and never copied onto the heap.
+	 * @param file the spill file
+	 * @return the value stored in file
+	 * @throws IOException if file cannot be read or is not a spill file
+	 */
+	public static OffHeapHeftyInteger load(Path file) throws IOException {
+		long size = Files.size(file);
+		if (size < HEADER_BYTES) {
+			throw new IOException("Not a HeftyInteger spill file: " + file);
+		}
+		Block b = map(file, size, false);
+		int signum = b.root.getInt(0);
+		int length = b.root.getInt(4);
+		if (signum < -1 || signum > 1 || length < 0 || size != HEADER_BYTES + 4L * length) {
+			release(b);
+			throw new IOException("Not a HeftyInteger spill file: " + file);
+		}
+		IntBuffer limbs = b.root.slice(HEADER_BYTES, 4 * length).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		return new OffHeapHeftyInteger(signum, limbs, length, b);
+	}
+
+	/**
+	 * Write this to a file and return the same value mapped from that file.
+	 * The limbs are copied buffer to buffer and never pass through the
+	 * heap. The value is written to a temporary file next to file and moved
+	 * over it, so anything already mapped from file, including this, keeps
+	 * its contents.
+	 * @param file where to store the value
+	 * @return an OffHeapHeftyInteger backed by file
+	 * @throws IOException if file cannot be written
+	 */
+	public OffHeapHeftyInteger spill(Path file) throws IOException {
+		checkOpen();
+		Path dir = file.toAbsolutePath().getParent();
+		Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+		Block b = null;
+		try {
+			b = map(tmp, HEADER_BYTES + 4L * length, true);
+			b.root.putInt(0, signum);
+			b.root.putInt(4, length);
+			IntBuffer limbs = b.root.slice(HEADER_BYTES, 4 * length).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			limbs.put(0, mag, 0, length);
+			((MappedByteBuffer) b.root).force();
+
+			//the mapping follows the file, not its name, so it survives the move
+			Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			return new OffHeapHeftyInteger(signum, limbs, length, b);
+		}
+		catch (IOException | RuntimeException e) {
+			if (b != null) {
+				release(b);
+			}
+			Files.deleteIfExists(tmp);
+			throw e;
+		}
+	}
+
+	/**
+	 * Release the memory behind this, or leave it to the values still
+	 * sharing it. Closing twice does nothing.
+	 */
+	@Override
+	public void close() {
+		if (!closed.compareAndSet(false, true)) {
+			return;
+		}
+		if (block.owners.decrementAndGet() == 0) {
+			release(block);
+		}
+	}
+
+	/**
+	 * Copy this onto the heap
+	 * @return a HeftyInteger equal to this
+	 */
+	public HeftyInteger toHeftyInteger() {
+		checkOpen();
+		int[] m = new int[length];
+		mag.get(0, m);
+		return new HeftyInteger(signum, m);
+	}
+
+	/**
+	 * Return the sign of this
+	 * @return -1, 0 or 1 as this is negative, zero or positive
+	 */
+	public int signum() {
+		checkOpen();
+		return signum;
+	}
+
+	/**
+	 * Compute the sum of this and other off-heap
+	 * @param other the value to add to this
+	 * @return this + other
+	 */
+	public OffHeapHeftyInteger add(OffHeapHeftyInteger other) {
+		return add(other, other.signum);
+	}
+
+	/**
+	 * Compute this plus the magnitude of other with the given sign, so
+	 * subtract needs no negated copy of other
+	 */
+	private OffHeapHeftyInteger add(OffHeapHeftyInteger other, int otherSign) {
+		checkOpen();
+		other.checkOpen();
+		if (otherSign == 0) {
+			return share(signum);
+		}
+		if (signum == 0) {
+			return other.share(otherSign);
+		}
+		if (signum == otherSign) {
+			Block b = addMag(this, other);
+			return new OffHeapHeftyInteger(signum, limbs(b), Math.max(length, other.length) + 1, b);
+		}
+
+		//otherwise subtract the smaller magnitude from the larger one and
+		// take the sign of the larger
+		int cmp = compareMag(this, other);
+		if (cmp == 0) {
+			Block b = allocate(0);
+			return new OffHeapHeftyInteger(0, limbs(b), 0, b);
+		}
+		if (cmp > 0) {
+			Block b = subtractMag(this, other);
+			return new OffHeapHeftyInteger(signum, limbs(b), length, b);
+		}
+		Block b = subtractMag(other, this);
+		return new OffHeapHeftyInteger(otherSign, limbs(b), other.length, b);
+	}
+
+	/**
+	 * Negate this, sharing its limbs
+	 * @return -this
+	 */
+	public OffHeapHeftyInteger negate() {
+		checkOpen();
+		return share(-signum);
+	}
+
+	/**
+	 * Compute the difference of this and other off-heap
+	 * @param other the value to subtract from this
+	 * @return this - other
+	 */
+	public OffHeapHeftyInteger subtract(OffHeapHeftyInteger other) {
+		return add(other, -other.signum);
+	}
+
+	/**
+	 * Compute the product of this and other with HeftyInteger.multiply,
+	 * storing the result off-heap
+	 * @param other the value to multiply by this
+	 * @return this * other
+	 */
+	public OffHeapHeftyInteger multiply(OffHeapHeftyInteger other) {
+		return of(toHeftyInteger().multiply(other.toHeftyInteger()));
+	}
+
+	/**
+	 * Compute the square of this with HeftyInteger.square, storing the
+	 * result off-heap
+	 * @return this * this
+	 */
+	public OffHeapHeftyInteger square() {
+		return of(toHeftyInteger().square());
+	}
+
+	/**
+	 * Raise this to a non-negative power with HeftyInteger.pow, storing the
+	 * result off-heap
+	 * @param exponent the power to raise this to
+	 * @return this^exponent
+	 */
+	public OffHeapHeftyInteger pow(int exponent) {
+		return of(toHeftyInteger().pow(exponent));
+	}
+
+	/**
+	 * Divide this by divisor with HeftyInteger.divide, storing the quotient
+	 * off-heap
+	 * @param divisor the nonzero value to divide by
+	 * @return the quotient this / divisor, rounded toward zero
+	 */
+	public OffHeapHeftyInteger divide(OffHeapHeftyInteger divisor) {
+		return of(toHeftyInteger().divide(divisor.toHeftyInteger()));
+	}
+
+	/**
+	 * Reduce this modulo m with HeftyInteger.mod, storing the result
+	 * off-heap
+	 * @param m the modulus, must be positive
+	 * @return this mod m, in the range [0, m)
+	 */
+	public OffHeapHeftyInteger mod(OffHeapHeftyInteger m) {
+		return of(toHeftyInteger().mod(m.toHeftyInteger()));
+	}
+
+	/**
+	 * Shift this left by n bits with HeftyInteger.shiftLeft, storing the
+	 * result off-heap
+	 * @param n number of bits to shift by, right if negative
+	 * @return this * 2^n, rounded toward negative infinity
+	 */
+	public OffHeapHeftyInteger shiftLeft(int n) {
+		return of(toHeftyInteger().shiftLeft(n));
+	}
+
+	/**
+	 * Shift this right by n bits with HeftyInteger.shiftRight, storing the
+	 * result off-heap
+	 * @param n number of bits to shift by, left if negative
+	 * @return floor(this / 2^n)
+	 */
+	public OffHeapHeftyInteger shiftRight(int n) {
+		return of(toHeftyInteger().shiftRight(n));
+	}
+
+	/**
+	 * Compare this with other by value, looking at limbs only when the signs
+	 * and lengths match
+	 * @param other the value to compare with
+	 * @return -1, 0 or 1 as this is less than, equal to or greater than other
+	 */
+	@Override
+	public int compareTo(OffHeapHeftyInteger other) {
+		checkOpen();
+		other.checkOpen();
+		if (signum != other.signum) {
+			return (signum < other.signum) ? -1 : 1;
+		}
+		int cmp = compareMag(this, other);
+		return (signum < 0) ? -cmp : cmp;
+	}
+
+	/**
+	 * Check whether o is an OffHeapHeftyInteger with the same value as this
+	 * @param o the object to compare with
+	 * @return true if o is numerically equal to this
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		}
+		if (!(o instanceof OffHeapHeftyInteger)) {
+			return false;
+		}
+		return compareTo((OffHeapHeftyInteger) o) == 0;
+	}
+
+	/**
+	 * Hash the value of this, the same way HeftyInteger.hashCode does
+	 * @return hash code of this
+	 */
+	@Override
+	public int hashCode() {
+		checkOpen();
+		int h = 0;
+		for (int i = length - 1; i >= 0; i--) {
+			h = 31 * h + mag.get(i);
+		}
+		return h * signum;
+	}
+
+	/**
+	 * Fail if this has been closed, since its memory may be gone
+	 */
+	private void checkOpen() {
+		if (closed.get()) {
+			throw new IllegalStateException("OffHeapHeftyInteger is closed");
+		}
+	}
+
+	/**
+	 * Return a new value with the given sign reading the same limbs as this
+	 */
+	private OffHeapHeftyInteger share(int sign) {
+		int n;
+		do {
+			n = block.owners.get();
+			if (n == 0) {
+				throw new IllegalStateException("OffHeapHeftyInteger is closed");
+			}
+		} while (!block.owners.compareAndSet(n, n + 1));
+		return new OffHeapHeftyInteger(sign, mag, length, block);
+	}
+
+	/**
+	 * Allocate zeroed limbs in a direct buffer
+	 */
+	private static Block allocate(int limbs) {
+		//the foreign memory API refuses empty segments, and zero needs no freeing
+		if (MEMORY == null || limbs == 0) {
+			return new Block(ByteBuffer.allocateDirect(4 * limbs), null);
+		}
+		Object scope = MEMORY.newScope();
+		return new Block(MEMORY.allocate(4L * limbs, scope), scope);
+	}
+
+	/**
+	 * Map the first bytes of file, growing it if it is shorter
+	 */
+	private static Block map(Path file, long bytes, boolean writable) throws IOException {
+		if (MEMORY != null) {
+			Object scope = MEMORY.newScope();
+			return new Block(MEMORY.map(file, bytes, writable, scope), scope);
+		}
+		if (writable) {
+			try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				return new Block(ch.map(FileChannel.MapMode.READ_WRITE, 0, bytes), null);
+			}
+		}
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new Block(ch.map(FileChannel.MapMode.READ_ONLY, 0, bytes), null);
+		}
+	}
+
+	/**
+	 * View the whole of a freshly allocated block as limbs
+	 */
+	private static IntBuffer limbs(Block b) {
+		return b.root.asIntBuffer();
+	}
+
+	/**
+	 * Free a block now if it was allocated through the foreign memory
+	 * backend, or else just drop it for the garbage collector
+	 */
+	private static void release(Block b) {
+		b.root = null;
+		if (b.scope != null) {
+			MEMORY.close(b.scope);
+		}
+	}
+
+	/**
+	 * Look up the optional foreign memory backend. It needs the
+	 * jdk.incubator.foreign module at both compile and run time, so any
+	 * failure to load it just means buffers are left to the garbage collector.
+	 * @return the backend, or null if it is not available
+	 */
+	private static OffHeapMemory loadForeignMemory() {
+		try {
+			return (OffHeapMemory) Class.forName("ForeignOffHeapMemory").getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Compare the magnitudes of x and y
+	 */
+	private static int compareMag(OffHeapHeftyInteger x, OffHeapHeftyInteger y) {
+		if (x.length != y.length) {
+			return (x.length < y.length) ? -1 : 1;
+		}
+		for (int i = x.length - 1; i >= 0; i--) {
+			int a = x.mag.get(i), b = y.mag.get(i);
+			if (a != b) {
+				return ((a & HeftyInteger.LONG_MASK) < (b & HeftyInteger.LONG_MASK)) ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Add the magnitudes of x and y into a new block one limb longer than
+	 * the longer of them
+	 */
+	private static Block addMag(OffHeapHeftyInteger x, OffHeapHeftyInteger y) {
+		if (x.length < y.length) {
+			OffHeapHeftyInteger t = x;
+			x = y;
+			y = t;
+		}
+		Block b = allocate(x.length + 1);
+		IntBuffer res = limbs(b);
+		long carry = 0;
+		int i = 0;
+		for (; i < y.length; i++) {
+			carry += (x.mag.get(i) & HeftyInteger.LONG_MASK) + (y.mag.get(i) & HeftyInteger.LONG_MASK);
+			res.put(i, (int) carry);
+			carry >>>= 32;
+		}
+		for (; i < x.length; i++) {
+			carry += x.mag.get(i) & HeftyInteger.LONG_MASK;
+			res.put(i, (int) carry);
+			carry >>>= 32;
+		}
+		res.put(i, (int) carry);
+		return b;
+	}
+
+	/**
+	 * Subtract the magnitude of y from the larger magnitude of x into a new
+	 * block as long as x
+	 */
+	private static Block subtractMag(OffHeapHeftyInteger x, OffHeapHeftyInteger y) {
+		Block b = allocate(x.length);
+		IntBuffer res = limbs(b);
+		long borrow = 0;
+		int i = 0;
+		for (; i < y.length; i++) {
+			borrow += (x.mag.get(i) & HeftyInteger.LONG_MASK) - (y.mag.get(i) & HeftyInteger.LONG_MASK);
+			res.put(i, (int) borrow);
+			borrow >>= 32;
+		}
+		for (; i < x.length; i++) {
+			borrow += x.mag.get(i) & HeftyInteger.LONG_MASK;
+			res.put(i, (int) borrow);
+			borrow >>= 32;
+		}
+		return b;
+	}
+}
@@ -0,0 +1,45 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Native memory that can be freed on demand, loaded at startup when an
+ * implementation is present (see foreign/ForeignOffHeapMemory.java).
+ * Without one, OffHeapHeftyInteger allocates and maps through java.nio and
+ * leaves freeing the buffers to the garbage collector.
+ */
+interface OffHeapMemory {
+
+	/**
+	 * Open a scope that owns everything later allocated or mapped in it
+	 * @return a handle for the scope, only ever passed back to this
+	 */
+	Object newScope();
+
+	/**
+	 * Allocate zeroed native memory
+	 * @param bytes size of the buffer
+	 * @param scope a scope from newScope that frees the buffer
+	 * @return a direct buffer of the given size
+	 */
+	ByteBuffer allocate(long bytes, Object scope);
+
+	/**
+	 * Map the start of a file, growing it if it is shorter than bytes
+	 * @param file the file to map
+	 * @param bytes size of the mapping
+	 * @param writable whether the mapping may be written
+	 * @param scope a scope from newScope that unmaps the buffer
+	 * @return a buffer over the first bytes of file
+	 * @throws IOException if file cannot be opened or mapped
+	 */
+	MappedByteBuffer map(Path file, long bytes, boolean writable, Object scope) throws IOException;
+
+	/**
+	 * Free everything allocated or mapped in a scope. Buffers from it must
+	 * not be used afterwards.
+	 * @param scope a scope from newScope
+	 */
+	void close(Object scope);
+}
@@ -0,0 +1,44 @@
+import java.util.Random;
+
+// NOTE: BigInteger is used only for convenience in generating test values
+import java.math.BigInteger;
+
+/**
+ * Compares BarrettReducer.reduce against HeftyInteger.mod when reducing
+ * many double-length values by the same modulus, for a range of modulus
+ * sizes.
+ *
+ * Usage: java ReductionBenchmark [reductionsPerSize]
+ */
+public class ReductionBenchmark {
+
+    public static void main(String[] args) {
+        int count = (args.length >= 1) ? Integer.parseInt(args[0]) : 20000;
+        Random rnd = new Random(1501);
+
+        System.out.println("bits\tmod(us)\t\tbarrett(us)\tspeedup");
+        for (int bits = 256; bits <= 32768; bits *= 2) {
+            HeftyInteger m = new HeftyInteger(new BigInteger(bits, rnd).setBit(bits - 1).toByteArray());
+            HeftyInteger[] values = new HeftyInteger[256];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = new HeftyInteger(new BigInteger(2 * bits - 1, rnd).toByteArray());
+            }
+            BarrettReducer barrett = new BarrettReducer(m);
+
+            // take the best of several rounds so JIT warm-up and GC pauses
+            // don't land on one side
+            double mod = Double.MAX_VALUE, reduce = Double.MAX_VALUE;
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < count; i++) values[i & 255].mod(m);
+                mod = Math.min(mod, (System.nanoTime() - start) / (count * 1e3));
+
+                start = System.nanoTime();
+                for (int i = 0; i < count; i++) barrett.reduce(values[i & 255]);
+                reduce = Math.min(reduce, (System.nanoTime() - start) / (count * 1e3));
+            }
+
+            System.out.printf("%d\t%.3f\t\t%.3f\t\t%.2fx%n", bits, mod, reduce, mod / reduce);
+        }
+    }
+}
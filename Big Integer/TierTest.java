@@ -0,0 +1,100 @@
+import java.util.Random;
+
+// NOTE: BigInteger is used only as the reference the results are checked against
+import java.math.BigInteger;
+
+/**
+ * Checks the subquadratic tiers of HeftyInteger against java.math.BigInteger.
+ * Those tiers normally start at hundreds or thousands of limbs, so the
+ * package-private thresholds are lowered to a few limbs first; random
+ * operands of up to a few hundred limbs then pass through every tier and
+ * every switch between them: multiply (Karatsuba, Toom-3, NTT, parallel),
+ * divide (Burnikel-Ziegler), XGCD (half-GCD), parse/toString, modPow
+ * (Montgomery and Barrett) and sqrt.
+ *
+ * Usage: java TierTest [rounds]
+ *
+ * Prints each mismatch and exits with status 1 if there were any.
+ */
+public class TierTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        int rounds = (args.length >= 1) ? Integer.parseInt(args[0]) : 500;
+        Random rnd = new Random(1501);
+
+        HeftyInteger.KARATSUBA_THRESHOLD = 8;
+        HeftyInteger.TOOM3_THRESHOLD = 16;
+        HeftyInteger.NTT_THRESHOLD = 32;
+        HeftyInteger.PARALLEL_THRESHOLD = 16;
+        HeftyInteger.BURNIKEL_ZIEGLER_THRESHOLD = 8;
+        HeftyInteger.BURNIKEL_ZIEGLER_OFFSET = 4;
+        HeftyInteger.HGCD_THRESHOLD = 8;
+        HeftyInteger.HGCD_BASE_BITS = 256;
+        HeftyInteger.RADIX_CONVERSION_THRESHOLD = 2;
+
+        for (int i = 0; i < rounds; i++) {
+            BigInteger x = random(rnd, 1 + rnd.nextInt(300 * 32));
+            BigInteger y = random(rnd, 1 + rnd.nextInt(300 * 32));
+            HeftyInteger hx = toHefty(x);
+            HeftyInteger hy = toHefty(y);
+
+            check("multiply", x.multiply(y), hx.multiply(hy));
+            check("square", x.multiply(x), hx.square());
+            check("parallelMultiply", x.multiply(y), hx.parallelMultiply(hy));
+
+            if (y.signum() != 0) {
+                BigInteger[] qr = x.divideAndRemainder(y);
+                HeftyInteger[] hqr = hx.divideAndRemainder(hy);
+                check("divide", qr[0], hqr[0]);
+                check("remainder", qr[1], hqr[1]);
+            }
+
+            HeftyInteger[] gxy = hx.XGCD(hy);
+            check("XGCD gcd", x.gcd(y), gxy[0]);
+            check("XGCD coefficients", x.gcd(y),
+                    hx.multiply(gxy[1]).add(hy.multiply(gxy[2])));
+
+            int radix = 2 + rnd.nextInt(35);
+            String s = x.toString(radix);
+            if (!hx.toString(radix).equals(s)) {
+                fail("toString(" + radix + ")", s, hx.toString(radix));
+            }
+            check("parse(" + radix + ")", x, HeftyInteger.parse(s, radix));
+
+            BigInteger m = y.abs().add(BigInteger.ONE);
+            BigInteger e = random(rnd, 1 + rnd.nextInt(128)).abs();
+            check("modPow", x.modPow(e, m), hx.modPow(toHefty(e), toHefty(m)));
+
+            BigInteger a = x.abs();
+            check("sqrt", a.sqrt(), toHefty(a).sqrt());
+        }
+
+        if (failures > 0) {
+            System.out.println(failures + " mismatches");
+            System.exit(1);
+        }
+        System.out.println("All " + rounds + " rounds match BigInteger");
+    }
+
+    private static BigInteger random(Random rnd, int bits) {
+        BigInteger v = new BigInteger(bits, rnd);
+        return rnd.nextBoolean() ? v.negate() : v;
+    }
+
+    private static HeftyInteger toHefty(BigInteger v) {
+        return new HeftyInteger(v.toByteArray());
+    }
+
+    private static void check(String what, BigInteger expected, HeftyInteger actual) {
+        String got = actual.toString();
+        if (!got.equals(expected.toString())) {
+            fail(what, expected.toString(), got);
+        }
+    }
+
+    private static void fail(String what, String expected, String got) {
+        failures++;
+        System.out.println(what + " mismatch:\n  expected " + expected + "\n  got      " + got);
+    }
+}
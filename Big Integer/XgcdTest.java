@@ -3,9 +3,6 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 
-// NOTE: BigInteger is used only for convenience in printing and converting byte[]'s
-import java.math.BigInteger;
-
 public class XgcdTest {
     private static boolean QUIET = false;
 
@@ -23,8 +20,8 @@ public class XgcdTest {
             System.err.println("Failed to read input");
             return;
         }
-        HeftyInteger hiOne = new HeftyInteger(new BigInteger(one).toByteArray());
-        HeftyInteger hiTwo = new HeftyInteger(new BigInteger(two).toByteArray());
+        HeftyInteger hiOne = HeftyInteger.parse(one, 10);
+        HeftyInteger hiTwo = HeftyInteger.parse(two, 10);
         HeftyInteger[] result = hiOne.XGCD(hiTwo);
         printIfLoud("Result, where a*x + b*y = GCD(x,y):");
         System.out.print("GCD(a, b) = ");
@@ -44,7 +41,7 @@ public class XgcdTest {
     }
 
     public static void printHeftyInteger(HeftyInteger hi) {
-        System.out.println(new BigInteger(hi.getVal()).toString());
+        System.out.println(hi.toString());
     }
 
 }
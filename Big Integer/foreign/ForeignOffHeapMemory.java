@@ -0,0 +1,51 @@
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Native memory on the incubating foreign memory API, so closing an
+ * OffHeapHeftyInteger frees its buffer at once. OffHeapHeftyInteger looks
+ * this class up by name at startup and uses it only if it loads, so it is
+ * built separately and the rest of the directory still compiles with plain
+ * javac:
+ *
+ *   javac --add-modules jdk.incubator.foreign -cp . -d . foreign/ForeignOffHeapMemory.java
+ *   java --add-modules jdk.incubator.foreign MultiplicationTest
+ *
+ * Buffers belong to shared scopes, so a buffer used after its scope is
+ * closed throws IllegalStateException instead of reading freed memory.
+ */
+class ForeignOffHeapMemory implements OffHeapMemory {
+
+	ForeignOffHeapMemory() {
+		//fail here rather than on first use if the module is missing
+		ResourceScope.globalScope();
+	}
+
+	@Override
+	public Object newScope() {
+		return ResourceScope.newSharedScope();
+	}
+
+	@Override
+	public ByteBuffer allocate(long bytes, Object scope) {
+		return MemorySegment.allocateNative(bytes, (ResourceScope) scope).asByteBuffer();
+	}
+
+	@Override
+	public MappedByteBuffer map(Path file, long bytes, boolean writable, Object scope) throws IOException {
+		FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+		//a segment from mapFile is backed by a MappedByteBuffer
+		return (MappedByteBuffer) MemorySegment.mapFile(file, 0, bytes, mode, (ResourceScope) scope).asByteBuffer();
+	}
+
+	@Override
+	public void close(Object scope) {
+		((ResourceScope) scope).close();
+	}
+}
@@ -0,0 +1,100 @@
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * SIMD limb kernels on the incubating Vector API. HeftyInteger looks this
+ * class up by name at startup and uses it only if it loads, so it is built
+ * separately and the rest of the directory still compiles with plain javac:
+ *
+ *   javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorLimbKernels.java
+ *   java --add-modules jdk.incubator.vector MultiplicationTest
+ *
+ * Without the module, or on a machine with vectors narrower than four
+ * longs, loading fails and the scalar loops are used instead.
+ */
+class VectorLimbKernels implements LimbKernels {
+
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+	//rows of x and columns of y handled per tile, a multiple of any vector
+	// length; the buffers below only ever need to hold one tile
+	private static final int TILE = 256;
+
+	//padded copy of a tile of y and the two column sums of a tile, kept per
+	// thread so a multiply allocates nothing, and bounded by TILE however
+	// long the operands are
+	private static final ThreadLocal<long[][]> BUFFERS =
+			ThreadLocal.withInitial(() -> new long[][] {new long[TILE], new long[2 * TILE], new long[2 * TILE]});
+
+	VectorLimbKernels() {
+		if (SPECIES.length() < 4) {
+			throw new UnsupportedOperationException("Vectors too narrow to help");
+		}
+	}
+
+	/**
+	 * Carry-save multiply, one TILE x TILE block of the product at a time.
+	 * Each lane forms 32x32 bit products of one row and adds their low and
+	 * high halves into separate column sums, which have room for 2^31 rows,
+	 * so no carries move between lanes. One scalar pass per tile then adds
+	 * the column sums into z and carries on up as far as needed.
+	 */
+	@Override
+	public void multiply(int[] x, int xlen, int[] y, int ylen, int[] z) {
+		int lanes = SPECIES.length();
+		long[][] buffers = BUFFERS.get();
+		long[] yv = buffers[0];
+		long[] lo = buffers[1];
+		long[] hi = buffers[2];
+
+		for (int j0 = 0; j0 < ylen; j0 += TILE) {
+			int yb = Math.min(TILE, ylen - j0);
+			int ypad = (yb + lanes - 1) / lanes * lanes;
+
+			//this tile of y as unsigned longs, zero padded to whole vectors
+			for (int j = 0; j < yb; j++) {
+				yv[j] = y[j0 + j] & HeftyInteger.LONG_MASK;
+			}
+			Arrays.fill(yv, yb, ypad, 0);
+
+			for (int i0 = 0; i0 < xlen; i0 += TILE) {
+				int xb = Math.min(TILE, xlen - i0);
+				Arrays.fill(lo, 0, xb + ypad, 0);
+				Arrays.fill(hi, 0, xb + ypad, 0);
+				for (int i = 0; i < xb; i++) {
+					LongVector xi = LongVector.broadcast(SPECIES, x[i0 + i] & HeftyInteger.LONG_MASK);
+					for (int j = 0; j < ypad; j += lanes) {
+						LongVector p = LongVector.fromArray(SPECIES, yv, j).mul(xi);
+						LongVector.fromArray(SPECIES, lo, i + j)
+								.add(p.and(HeftyInteger.LONG_MASK))
+								.intoArray(lo, i + j);
+						LongVector.fromArray(SPECIES, hi, i + j)
+								.add(p.lanewise(VectorOperators.LSHR, 32))
+								.intoArray(hi, i + j);
+					}
+				}
+
+				//the high half of column k belongs to column k + 1; z is
+				// zero wherever no earlier tile has reached, and never
+				// carries past the top since it ends up holding x * y
+				int base = i0 + j0;
+				long carry = 0;
+				long prevHi = 0;
+				for (int k = 0; k < xb + yb; k++) {
+					carry += lo[k] + prevHi + (z[base + k] & HeftyInteger.LONG_MASK);
+					prevHi = hi[k];
+					z[base + k] = (int) carry;
+					carry >>>= 32;
+				}
+				for (int k = base + xb + yb; carry != 0; k++) {
+					carry += z[k] & HeftyInteger.LONG_MASK;
+					z[k] = (int) carry;
+					carry >>>= 32;
+				}
+			}
+		}
+	}
+}